@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.pm.ProviderInfo;
+import android.database.DatabaseErrorHandler;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.File;
+
+/**
+ * 把数据库文件换成另一个名称的 Context，使性能测试工具创建的提供者不会触及用户的笔记。
+ * 提供者发出的变化通知仍然发往真实的 URI。
+ */
+class BenchmarkContext extends ContextWrapper {
+
+    private static final String PREFIX = "benchmark_";
+
+    BenchmarkContext(Context base) {
+        super(base);
+    }
+
+    /**
+     * 删除上次留下的数据库，然后在此 Context 上创建一个提供者。
+     */
+    NotePadProvider newProvider() {
+        deleteDatabase(NotePadProvider.DATABASE_NAME);
+
+        ProviderInfo info = new ProviderInfo();
+        info.authority = NotePad.AUTHORITY;
+        NotePadProvider provider = new NotePadProvider();
+        provider.attachInfo(this, info);
+        return provider;
+    }
+
+    /**
+     * 关闭提供者并删除它的数据库。
+     */
+    void release(NotePadProvider provider) {
+        provider.shutdown();
+        deleteDatabase(NotePadProvider.DATABASE_NAME);
+    }
+
+    @Override
+    public File getDatabasePath(String name) {
+        return super.getDatabasePath(PREFIX + name);
+    }
+
+    @Override
+    public SQLiteDatabase openOrCreateDatabase(String name, int mode,
+            SQLiteDatabase.CursorFactory factory) {
+        return super.openOrCreateDatabase(PREFIX + name, mode, factory);
+    }
+
+    @Override
+    public SQLiteDatabase openOrCreateDatabase(String name, int mode,
+            SQLiteDatabase.CursorFactory factory, DatabaseErrorHandler errorHandler) {
+        return super.openOrCreateDatabase(PREFIX + name, mode, factory, errorHandler);
+    }
+
+    @Override
+    public boolean deleteDatabase(String name) {
+        return super.deleteDatabase(PREFIX + name);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.app.Activity;
+import android.app.ProgressDialog;
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.view.View;
+import android.widget.EditText;
+import android.widget.Toast;
+
+/**
+ * 调试版本中的合成笔记数据生成器。用 {@link NoteCorpus} 生成给定数量的笔记，
+ * 通过 {@link NoteImporter} 按批次在事务中插入提供者，与导入文件的路径相同。
+ * 相同的种子和上限生成的数据与命令行工具（./gradlew :notes-core:generateCorpus）生成后导入的相同。
+ */
+public class CorpusGenerator extends Activity {
+
+    private static final long DEFAULT_SEED = 42;
+
+    private EditText mCount;
+    private EditText mSeed;
+    private EditText mMaxBodyLength;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.corpus_generator);
+
+        mCount = (EditText) findViewById(R.id.corpus_count);
+        mSeed = (EditText) findViewById(R.id.corpus_seed);
+        mMaxBodyLength = (EditText) findViewById(R.id.corpus_max_body_length);
+    }
+
+    /**
+     * 当用户点击“生成”按钮时调用。
+     */
+    public void onClickGenerate(View v) {
+        if (TextUtils.isEmpty(mCount.getText())) {
+            return;
+        }
+        int count = Integer.parseInt(mCount.getText().toString());
+        long seed = TextUtils.isEmpty(mSeed.getText())
+                ? DEFAULT_SEED : Long.parseLong(mSeed.getText().toString());
+        int maxBodyLength = TextUtils.isEmpty(mMaxBodyLength.getText())
+                ? NoteCorpus.DEFAULT_MAX_BODY_LENGTH
+                : Integer.parseInt(mMaxBodyLength.getText().toString());
+
+        new GenerateNotesTask(this, new NoteCorpus(seed, maxBodyLength)).execute(count);
+    }
+
+    /**
+     * 在后台生成并插入笔记的任务，显示进度对话框。
+     */
+    private static class GenerateNotesTask extends AsyncTask<Integer, Integer, Integer>
+            implements NoteImporter.ProgressListener {
+        private final Context mContext;
+        private final NoteCorpus mCorpus;
+        private final NoteImporter mImporter;
+        private final ProgressDialog mDialog;
+
+        GenerateNotesTask(Context context, NoteCorpus corpus) {
+            mContext = context.getApplicationContext();
+            mCorpus = corpus;
+            mImporter = new NoteImporter(context.getContentResolver(),
+                    NotePad.Notes.CONTENT_URI, this);
+            mDialog = new ProgressDialog(context);
+            mDialog.setIndeterminate(true);
+            mDialog.setCancelable(false);
+            mDialog.setMessage(context.getString(R.string.corpus_progress, 0));
+        }
+
+        @Override
+        protected void onPreExecute() {
+            mDialog.show();
+        }
+
+        @Override
+        protected Integer doInBackground(Integer... params) {
+            int count = params[0];
+            for (int i = 0; i < count; i++) {
+                mCorpus.next();
+                ContentValues values = new ContentValues();
+                values.put(NotePad.Notes.COLUMN_NAME_TITLE, mCorpus.getTitle());
+                values.put(NotePad.Notes.COLUMN_NAME_NOTE, mCorpus.getBody());
+                values.put(NotePad.Notes.COLUMN_NAME_CREATE_DATE, mCorpus.getCreated());
+                values.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, mCorpus.getModified());
+                mImporter.add(values, mCorpus.getBody().length());
+            }
+            mImporter.flush();
+            return mImporter.getImportedCount();
+        }
+
+        @Override
+        public void onProgress(int imported) {
+            publishProgress(imported);
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... values) {
+            mDialog.setMessage(mContext.getString(R.string.corpus_progress, values[0]));
+        }
+
+        @Override
+        protected void onPostExecute(Integer generated) {
+            if (mDialog.isShowing()) {
+                mDialog.dismiss();
+            }
+            Toast.makeText(mContext, mContext.getString(R.string.corpus_done, generated),
+                    Toast.LENGTH_LONG).show();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Bundle;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.View;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * 编辑框绘制的帧时间基准测试。在主线程上创建一个与屏幕大小相同的
+ * {@link NoteEditor.LinedEditText}，填入一个很多行的笔记，然后从头到尾滚动，
+ * 每一帧像父视图一样平移并裁剪画布后调用 draw()，测量每帧的耗时。
+ * <p>
+ * 报告帧时间的百分位数；第 99 百分位数超过帧预算时以失败结束，./gradlew editorDrawBenchmark 因此失败。
+ * 结果同时写入应用文件目录中的 editor_draw_benchmark.properties。
+ * <p>
+ * 参数（am instrument -e）：lines 笔记的行数，默认 50000；frames 测量的帧数，默认 600；
+ * budgetMillis 第 99 百分位数的上限，默认 16；seed 随机数种子，默认 42。
+ */
+public class EditorDrawBenchmark extends Instrumentation {
+
+    private static final String TAG = "EditorDrawBenchmark";
+
+    private static final String RESULTS_FILE = "editor_draw_benchmark.properties";
+
+    // 正式测量之前绘制的帧数
+    private static final int WARMUP_FRAMES = 60;
+
+    // 每行的词数范围
+    private static final int MIN_WORDS_PER_LINE = 2;
+    private static final int MAX_WORDS_PER_LINE = 8;
+
+    private int mLines = 50000;
+    private int mFrames = 600;
+    private double mBudgetMillis = 16;
+    private long mSeed = 42;
+
+    private final StringBuilder mReport = new StringBuilder();
+
+    @Override
+    public void onCreate(Bundle arguments) {
+        super.onCreate(arguments);
+        if (arguments != null) {
+            String lines = arguments.getString("lines");
+            if (lines != null) {
+                mLines = Integer.parseInt(lines);
+            }
+            String frames = arguments.getString("frames");
+            if (frames != null) {
+                mFrames = Integer.parseInt(frames);
+            }
+            String budget = arguments.getString("budgetMillis");
+            if (budget != null) {
+                mBudgetMillis = Double.parseDouble(budget);
+            }
+            String seed = arguments.getString("seed");
+            if (seed != null) {
+                mSeed = Long.parseLong(seed);
+            }
+        }
+        start();
+    }
+
+    @Override
+    public void onStart() {
+        final LatencyHistogram frameTimes = new LatencyHistogram();
+        final int[] layoutLines = new int[1];
+        boolean failed;
+        try {
+            // 视图只能在主线程上使用
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    layoutLines[0] = drawFrames(frameTimes);
+                }
+            });
+
+            double p99 = frameTimes.getPercentileMillis(99);
+            failed = p99 > mBudgetMillis;
+            report(String.format(Locale.US,
+                    "lines=%d layoutLines=%d frames=%d p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms%s",
+                    mLines, layoutLines[0], frameTimes.getCount(),
+                    frameTimes.getPercentileMillis(50), frameTimes.getPercentileMillis(90), p99,
+                    frameTimes.getPercentileMillis(100),
+                    failed ? String.format(Locale.US, "  OVER BUDGET (%.1fms)", mBudgetMillis) : ""));
+            writeResults(layoutLines[0], frameTimes);
+        } catch (IOException e) {
+            Log.e(TAG, "Benchmark failed", e);
+            report("error: " + e);
+            failed = true;
+        }
+
+        report(failed ? "FAILED" : "OK");
+        Bundle status = new Bundle();
+        status.putString(Instrumentation.REPORT_KEY_STREAMRESULT, mReport.toString());
+        finish(failed ? Activity.RESULT_CANCELED : Activity.RESULT_OK, status);
+    }
+
+    /**
+     * 创建编辑框并绘制所有帧。在主线程上调用。
+     *
+     * @return 编辑框布局中的行数（包括自动换行产生的行）。
+     */
+    private int drawFrames(LatencyHistogram frameTimes) {
+        DisplayMetrics metrics = getTargetContext().getResources().getDisplayMetrics();
+        int width = metrics.widthPixels;
+        int height = metrics.heightPixels;
+
+        NoteEditor.LinedEditText text = new NoteEditor.LinedEditText(getTargetContext(), null);
+        text.setText(buildNote());
+        text.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        text.layout(0, 0, width, height);
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        int scrollRange = Math.max(0, text.getLayout().getHeight() - height);
+
+        for (int frame = 0; frame < WARMUP_FRAMES + mFrames; frame++) {
+            // 从头到尾均匀地滚动，预热的帧也覆盖整个笔记
+            int measured = frame - WARMUP_FRAMES;
+            int scrollY = measured < 0
+                    ? (int) ((long) scrollRange * frame / WARMUP_FRAMES)
+                    : (int) ((long) scrollRange * measured / Math.max(1, mFrames - 1));
+            text.scrollTo(0, scrollY);
+
+            long start = System.nanoTime();
+            // 与 ViewGroup 绘制子视图时相同：按滚动位置平移，并裁剪到可见区域
+            int saveCount = canvas.save();
+            canvas.translate(0, -scrollY);
+            canvas.clipRect(0, scrollY, width, scrollY + height);
+            text.draw(canvas);
+            canvas.restoreToCount(saveCount);
+            long nanos = System.nanoTime() - start;
+
+            if (measured >= 0) {
+                frameTimes.recordNanos(nanos);
+            }
+        }
+        bitmap.recycle();
+        return text.getLineCount();
+    }
+
+    /**
+     * 生成 mLines 行的笔记内容。相同的种子总是生成相同的内容。
+     */
+    private String buildNote() {
+        Random random = new Random(mSeed);
+        StringBuilder note = new StringBuilder(mLines * 40);
+        for (int line = 0; line < mLines; line++) {
+            int words = MIN_WORDS_PER_LINE
+                    + random.nextInt(MAX_WORDS_PER_LINE - MIN_WORDS_PER_LINE + 1);
+            for (int i = 0; i < words; i++) {
+                if (i > 0) {
+                    note.append(' ');
+                }
+                note.append(NoteCorpus.word(random.nextInt(Integer.MAX_VALUE)));
+            }
+            note.append('\n');
+        }
+        return note.toString();
+    }
+
+    private void writeResults(int layoutLines, LatencyHistogram frameTimes) throws IOException {
+        Properties results = new Properties();
+        results.setProperty("lines", Integer.toString(mLines));
+        results.setProperty("layout_lines", Integer.toString(layoutLines));
+        results.setProperty("frames", Long.toString(frameTimes.getCount()));
+        results.setProperty("p50_ms", formatMillis(frameTimes.getPercentileMillis(50)));
+        results.setProperty("p90_ms", formatMillis(frameTimes.getPercentileMillis(90)));
+        results.setProperty("p99_ms", formatMillis(frameTimes.getPercentileMillis(99)));
+        results.setProperty("max_ms", formatMillis(frameTimes.getPercentileMillis(100)));
+
+        File file = new File(getTargetContext().getFilesDir(), RESULTS_FILE);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            results.store(out, "EditorDrawBenchmark seed=" + mSeed);
+        } finally {
+            out.close();
+        }
+        report("results: " + file);
+    }
+
+    private static String formatMillis(double millis) {
+        return String.format(Locale.US, "%.2f", millis);
+    }
+
+    /**
+     * 把一行报告发送给 am instrument，并加入最终的报告。
+     */
+    private void report(String line) {
+        Log.i(TAG, line);
+        mReport.append(line).append('\n');
+        Bundle status = new Bundle();
+        status.putString(Instrumentation.REPORT_KEY_STREAMRESULT, line + "\n");
+        sendStatus(0, status);
+    }
+}
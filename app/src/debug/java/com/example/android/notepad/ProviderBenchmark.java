@@ -0,0 +1,483 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * NotePadProvider 的吞吐量基准测试。在一个独立的数据库文件上创建提供者，依次填充到每个给定的笔记数量，
+ * 测量列表查询、搜索、读取单条笔记、自动保存式的更新、插入和删除的每秒操作数和延迟百分位数。
+ * <p>
+ * 结果与 assets/provider_benchmark_baseline.properties 中的基线比较，任何一项低于基线的容差，
+ * 或者没有基线时以失败结束，./gradlew providerBenchmark 因此失败。结果同时写入应用文件目录中的
+ * provider_benchmark.properties，格式与基线文件相同。记录模式下不与基线比较，
+ * ./gradlew providerBenchmark -PbenchmarkRecord 用这个文件替换基线。
+ * <p>
+ * 笔记由 {@link NoteCorpus} 生成，相同的种子在任何设备上得到相同的数据。
+ * <p>
+ * 最后在一个新的数据库上测量 {@link NoteImporter} 导入一个 NDJSON 文件的吞吐量，
+ * 文件同样由 {@link NoteCorpus} 生成。除了与基线比较，导入时间超过目标时也以失败结束。
+ * <p>
+ * 参数（am instrument -e）：sizes 逗号分隔的笔记数量，默认 1000,10000,100000,1000000；
+ * iterations 每项操作测量的次数，默认 500；seed 随机数种子，默认 42；
+ * maxBodyLength 内容长度的上限，默认 4096，使一百万条笔记的数据库能够放在设备上；
+ * record 为 true 时只记录结果，不与基线比较；importNotes 导入测试的笔记数量，默认 100000，
+ * 0 表示不测量导入；importTargetSeconds 导入时间的上限，默认 60。
+ */
+public class ProviderBenchmark extends Instrumentation {
+
+    private static final String TAG = "ProviderBenchmark";
+
+    private static final String BASELINE_ASSET = "provider_benchmark_baseline.properties";
+    private static final String RESULTS_FILE = "provider_benchmark.properties";
+    private static final String TOLERANCE_KEY = "tolerance";
+    private static final String IMPORT_FILE = "provider_benchmark_import.ndjson";
+
+    // 填充数据时每个事务插入的笔记数量
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    // 正式测量之前执行的次数，让 SQLite 的页缓存和语句缓存进入稳定状态
+    private static final int WARMUP_ITERATIONS = 50;
+
+    // 列表查询每页的笔记数量，与 PagedNotesAdapter 相同
+    private static final int PAGE_SIZE = 100;
+
+    private static final String[] LIST_PROJECTION = new String[] {
+            NotePad.Notes._ID,
+            NotePad.Notes.COLUMN_NAME_TITLE,
+            NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE,
+            NotePad.Notes.COLUMN_NAME_PREVIEW,
+            NotePad.Notes.COLUMN_NAME_COLOR
+    };
+
+    private int[] mSizes = { 1000, 10000, 100000, 1000000 };
+    private int mIterations = 500;
+    private long mSeed = 42;
+    private int mMaxBodyLength = 4096;
+    private boolean mRecord;
+    private int mImportNotes = 100000;
+    private int mImportTargetSeconds = 60;
+
+    private NotePadProvider mProvider;
+    private Random mRandom;
+    private NoteCorpus mCorpus;
+    private NoteCorpus mEdits;
+    private int mNoteCount;
+
+    // 每条填充的笔记的修改日期，下标是 ID - 1，用于构造键集分页的位置
+    private long[] mModified;
+    private final StringBuilder mReport = new StringBuilder();
+
+    /**
+     * 被测量的一项操作。i 是本次执行的序号。
+     */
+    private abstract static class Operation {
+        abstract void run(int i);
+    }
+
+    @Override
+    public void onCreate(Bundle arguments) {
+        super.onCreate(arguments);
+        if (arguments != null) {
+            String sizes = arguments.getString("sizes");
+            if (sizes != null) {
+                String[] parts = sizes.split(",");
+                mSizes = new int[parts.length];
+                for (int i = 0; i < parts.length; i++) {
+                    mSizes[i] = Integer.parseInt(parts[i].trim());
+                }
+            }
+            String iterations = arguments.getString("iterations");
+            if (iterations != null) {
+                mIterations = Integer.parseInt(iterations);
+            }
+            String seed = arguments.getString("seed");
+            if (seed != null) {
+                mSeed = Long.parseLong(seed);
+            }
+            String maxBodyLength = arguments.getString("maxBodyLength");
+            if (maxBodyLength != null) {
+                mMaxBodyLength = Integer.parseInt(maxBodyLength);
+            }
+            mRecord = Boolean.parseBoolean(arguments.getString("record"));
+            String importNotes = arguments.getString("importNotes");
+            if (importNotes != null) {
+                mImportNotes = Integer.parseInt(importNotes);
+            }
+            String importTarget = arguments.getString("importTargetSeconds");
+            if (importTarget != null) {
+                mImportTargetSeconds = Integer.parseInt(importTarget);
+            }
+        }
+        start();
+    }
+
+    @Override
+    public void onStart() {
+        BenchmarkContext context = new BenchmarkContext(getTargetContext());
+        mRandom = new Random(mSeed);
+        mCorpus = new NoteCorpus(mSeed, mMaxBodyLength);
+        // 自动保存写入的内容使用另一个序列，不影响填充的笔记
+        mEdits = new NoteCorpus(mSeed + 1, mMaxBodyLength);
+        int maxSize = 0;
+        for (int size : mSizes) {
+            maxSize = Math.max(maxSize, size);
+        }
+        mModified = new long[maxSize];
+        mProvider = context.newProvider();
+
+        Properties results = new Properties();
+        int failures = 0;
+        try {
+            Properties baseline = loadBaseline();
+            String toleranceValue = baseline.getProperty(TOLERANCE_KEY, "0.25");
+            double tolerance = Double.parseDouble(toleranceValue);
+            // 结果文件带上容差，记录模式下可以直接作为新的基线
+            results.setProperty(TOLERANCE_KEY, toleranceValue);
+
+            for (int size : mSizes) {
+                seed(size);
+                report(String.format(Locale.US, "notes=%d", mNoteCount));
+                failures += runSize(size, baseline, tolerance, results);
+            }
+            if (mImportNotes > 0) {
+                // 导入使用一个新的空数据库，不受前面填充的笔记数量影响
+                context.release(mProvider);
+                mProvider = context.newProvider();
+                failures += measureImport(baseline, tolerance, results);
+            }
+            writeResults(results);
+        } catch (IOException e) {
+            Log.e(TAG, "Benchmark failed", e);
+            report("error: " + e);
+            failures++;
+        } finally {
+            context.release(mProvider);
+        }
+
+        report(failures == 0 ? "OK" : "FAILED: " + failures + " regression(s) or missing baseline(s)");
+        Bundle status = new Bundle();
+        status.putString(Instrumentation.REPORT_KEY_STREAMRESULT, mReport.toString());
+        finish(failures == 0 ? Activity.RESULT_OK : Activity.RESULT_CANCELED, status);
+    }
+
+    /**
+     * 在当前的笔记数量下测量所有操作。
+     *
+     * @return 低于基线的操作数量。
+     */
+    private int runSize(int size, Properties baseline, double tolerance, Properties results) {
+        int failures = 0;
+
+        // 列表的第一页，以及表中随机位置的一页（键集分页）
+        failures += measure(size, "list_first_page", new Operation() {
+            @Override
+            void run(int i) {
+                drain(mProvider.query(pageUri(0, -1), LIST_PROJECTION, null, null,
+                        NotePad.Notes.PAGED_SORT_ORDER));
+            }
+        }, baseline, tolerance, results);
+
+        failures += measure(size, "list_keyset_page", new Operation() {
+            @Override
+            void run(int i) {
+                long id = randomId();
+                drain(mProvider.query(pageUri(mModified[(int) id - 1], id), LIST_PROJECTION,
+                        null, null, NotePad.Notes.PAGED_SORT_ORDER));
+            }
+        }, baseline, tolerance, results);
+
+        failures += measure(size, "search", new Operation() {
+            @Override
+            void run(int i) {
+                Uri uri = NotePad.Notes.CONTENT_SEARCH_URI.buildUpon()
+                        .appendQueryParameter(NotePad.Notes.SEARCH_QUERY_PARAMETER,
+                                NoteCorpus.word(mRandom.nextInt(100)))
+                        .appendQueryParameter(NotePad.Notes.LIMIT_QUERY_PARAMETER, "500")
+                        .build();
+                drain(mProvider.query(uri, LIST_PROJECTION, null, null, null));
+            }
+        }, baseline, tolerance, results);
+
+        failures += measure(size, "read", new Operation() {
+            @Override
+            void run(int i) {
+                drain(mProvider.query(noteUri(randomId()), null, null, null, null));
+            }
+        }, baseline, tolerance, results);
+
+        // 与 NoteAutosaver 的写入相同：内容和修改日期
+        failures += measure(size, "autosave_update", new Operation() {
+            @Override
+            void run(int i) {
+                ContentValues values = new ContentValues();
+                mEdits.next();
+                values.put(NotePad.Notes.COLUMN_NAME_NOTE, mEdits.getBody());
+                values.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, System.currentTimeMillis());
+                mProvider.update(noteUri(randomId()), values, null, null);
+            }
+        }, baseline, tolerance, results);
+
+        // 插入的笔记随后被删除，笔记数量保持不变
+        final long[] inserted = new long[WARMUP_ITERATIONS + mIterations];
+        failures += measure(size, "insert", new Operation() {
+            @Override
+            void run(int i) {
+                Uri uri = mProvider.insert(NotePad.Notes.CONTENT_URI, newNote());
+                inserted[i] = ContentUris.parseId(uri);
+            }
+        }, baseline, tolerance, results);
+
+        failures += measure(size, "delete", new Operation() {
+            @Override
+            void run(int i) {
+                mProvider.delete(noteUri(inserted[i]), null, null);
+            }
+        }, baseline, tolerance, results);
+
+        return failures;
+    }
+
+    /**
+     * 执行并测量一项操作，报告结果并与基线比较。
+     *
+     * @return 低于基线或没有基线时返回 1，否则返回 0。记录模式下总是返回 0。
+     */
+    private int measure(int size, String name, Operation operation, Properties baseline,
+            double tolerance, Properties results) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            operation.run(i);
+        }
+
+        LatencyHistogram latency = new LatencyHistogram();
+        for (int i = 0; i < mIterations; i++) {
+            long start = System.nanoTime();
+            operation.run(WARMUP_ITERATIONS + i);
+            latency.recordNanos(System.nanoTime() - start);
+        }
+
+        double opsPerSecond = latency.getCount() * 1e9 / Math.max(1, latency.getTotalNanos());
+        String key = size + "." + name;
+        results.setProperty(key, String.format(Locale.US, "%.1f", opsPerSecond));
+
+        StringBuilder verdict = new StringBuilder();
+        int failed = checkBaseline(key, opsPerSecond, baseline, tolerance, verdict);
+        report(String.format(Locale.US, "  %-18s %10.1f ops/s  p50=%.2fms p90=%.2fms p99=%.2fms%s",
+                name, opsPerSecond, latency.getPercentileMillis(50),
+                latency.getPercentileMillis(90), latency.getPercentileMillis(99), verdict));
+        return failed;
+    }
+
+    /**
+     * 把结果与基线比较，并把结论追加到 verdict。
+     *
+     * @return 低于基线或没有基线时返回 1，否则返回 0。记录模式下总是返回 0。
+     */
+    private int checkBaseline(String key, double opsPerSecond, Properties baseline,
+            double tolerance, StringBuilder verdict) {
+        String expected = baseline.getProperty(key);
+        if (mRecord) {
+            verdict.append("  (recorded)");
+        } else if (expected == null) {
+            verdict.append("  MISSING BASELINE");
+            return 1;
+        } else if (opsPerSecond < Double.parseDouble(expected) * (1 - tolerance)) {
+            verdict.append(String.format(Locale.US, "  REGRESSION (baseline %s ops/s)", expected));
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * 生成 mImportNotes 条笔记的 NDJSON 文件，然后用 {@link NoteImporter} 导入当前的（空）提供者，
+     * 测量从打开文件到最后一个批次提交的时间。结果以每秒导入的笔记数与基线比较。
+     *
+     * @return 低于基线、没有基线或超过目标时间时返回 1，否则返回 0。
+     */
+    private int measureImport(Properties baseline, double tolerance, Properties results)
+            throws IOException {
+        File file = new File(getTargetContext().getCacheDir(), IMPORT_FILE);
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                "UTF-8"), 64 * 1024);
+        try {
+            new NoteCorpus(mSeed + 2, mMaxBodyLength).writeNdjson(out, mImportNotes);
+        } finally {
+            out.close();
+        }
+
+        try {
+            // 直接插入独立数据库上的提供者实例，不经过 ContentResolver
+            NoteImporter importer = new NoteImporter(new NoteImporter.BatchSink() {
+                @Override
+                public int bulkInsert(Uri uri, ContentValues[] values) {
+                    return mProvider.bulkInsert(uri, values);
+                }
+            }, NotePad.Notes.CONTENT_URI, null);
+            long start = System.nanoTime();
+            InputStream in = new FileInputStream(file);
+            try {
+                importer.importFrom(in);
+            } finally {
+                in.close();
+            }
+            long nanos = Math.max(1, System.nanoTime() - start);
+
+            double notesPerSecond = importer.getImportedCount() * 1e9 / nanos;
+            String key = mImportNotes + ".import";
+            results.setProperty(key, String.format(Locale.US, "%.1f", notesPerSecond));
+
+            StringBuilder verdict = new StringBuilder();
+            int failed = checkBaseline(key, notesPerSecond, baseline, tolerance, verdict);
+            double seconds = nanos / 1e9;
+            if (seconds > mImportTargetSeconds) {
+                verdict.append(String.format(Locale.US, "  OVER TARGET (%d s)",
+                        mImportTargetSeconds));
+                failed = 1;
+            }
+            report(String.format(Locale.US, "import notes=%d file=%d bytes  %.1f s  %.1f notes/s%s",
+                    importer.getImportedCount(), file.length(), seconds, notesPerSecond, verdict));
+            return failed;
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * 插入笔记，直到笔记数量达到 target。每批在一个事务中插入。
+     */
+    private void seed(int target) {
+        while (mNoteCount < target) {
+            int batch = Math.min(SEED_BATCH_SIZE, target - mNoteCount);
+            ContentValues[] values = new ContentValues[batch];
+            for (int i = 0; i < batch; i++) {
+                values[i] = newNote();
+                mModified[mNoteCount + i] = mCorpus.getModified();
+            }
+            mProvider.bulkInsert(NotePad.Notes.CONTENT_URI, values);
+            mNoteCount += batch;
+        }
+    }
+
+    /**
+     * 生成下一条笔记。
+     */
+    private ContentValues newNote() {
+        mCorpus.next();
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_TITLE, mCorpus.getTitle());
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, mCorpus.getBody());
+        values.put(NotePad.Notes.COLUMN_NAME_CREATE_DATE, mCorpus.getCreated());
+        values.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, mCorpus.getModified());
+        return values;
+    }
+
+    /**
+     * 填充的笔记按插入顺序编号，第 n 条笔记的 ID 是 n + 1。
+     */
+    private long randomId() {
+        return 1 + mRandom.nextInt(mNoteCount);
+    }
+
+    private static Uri noteUri(long id) {
+        return ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, id);
+    }
+
+    /**
+     * @param beforeModified 和 beforeId 从这条笔记之后开始的一页；beforeId 为 -1 表示第一页
+     */
+    private static Uri pageUri(long beforeModified, long beforeId) {
+        Uri.Builder builder = NotePad.Notes.CONTENT_URI.buildUpon().appendQueryParameter(
+                NotePad.Notes.LIMIT_QUERY_PARAMETER, Integer.toString(PAGE_SIZE));
+        if (beforeId >= 0) {
+            builder.appendQueryParameter(NotePad.Notes.BEFORE_MODIFIED_QUERY_PARAMETER,
+                    Long.toString(beforeModified));
+            builder.appendQueryParameter(NotePad.Notes.BEFORE_ID_QUERY_PARAMETER,
+                    Long.toString(beforeId));
+        }
+        return builder.build();
+    }
+
+    /**
+     * 读完游标的所有行，然后关闭它。查询的大部分工作在填充游标窗口时才发生。
+     */
+    private static void drain(Cursor cursor) {
+        if (cursor == null) {
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Properties loadBaseline() throws IOException {
+        Properties baseline = new Properties();
+        InputStream in = getContext().getAssets().open(BASELINE_ASSET);
+        try {
+            baseline.load(in);
+        } finally {
+            in.close();
+        }
+        return baseline;
+    }
+
+    private void writeResults(Properties results) throws IOException {
+        File file = new File(getTargetContext().getFilesDir(), RESULTS_FILE);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            results.store(out, "ProviderBenchmark ops/s, seed=" + mSeed
+                    + ", iterations=" + mIterations);
+        } finally {
+            out.close();
+        }
+        report("results: " + file);
+    }
+
+    /**
+     * 把一行报告发送给 am instrument，并加入最终的报告。
+     */
+    private void report(String line) {
+        Log.i(TAG, line);
+        mReport.append(line).append('\n');
+        Bundle status = new Bundle();
+        status.putString(Instrumentation.REPORT_KEY_STREAMRESULT, line + "\n");
+        sendStatus(0, status);
+    }
+}
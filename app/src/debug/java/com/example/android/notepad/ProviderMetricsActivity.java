@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.view.View;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 调试版本中显示提供者性能指标的界面。通过 {@link NotePad#METHOD_PROVIDER_METRICS}
+ * 取得按 URI 模式和操作统计的快照，每个组合显示一行；最后显示行缓存的统计。
+ */
+public class ProviderMetricsActivity extends Activity {
+
+    private static final String ROW_FORMAT = "%-24s %8s %10s %8s %8s %8s %10s %12s%n";
+
+    private TextView mText;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.provider_metrics);
+        mText = (TextView) findViewById(R.id.metrics_text);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        show(null);
+    }
+
+    /**
+     * 当用户点击“刷新”按钮时调用。
+     */
+    public void onClickRefresh(View v) {
+        show(null);
+    }
+
+    /**
+     * 当用户点击“清除”按钮时调用。显示清除之前的快照。
+     */
+    public void onClickReset(View v) {
+        show(NotePad.METRICS_ARG_RESET);
+    }
+
+    /**
+     * 从提供者取得指标快照并显示。快照只读取内存中的计数，可以在主线程中调用。
+     */
+    private void show(String arg) {
+        Bundle metrics = getContentResolver().call(NotePad.Notes.CONTENT_URI,
+                NotePad.METHOD_PROVIDER_METRICS, arg, null);
+        Bundle rowCache = getContentResolver().call(NotePad.Notes.CONTENT_URI,
+                NotePad.METHOD_ROW_CACHE_STATS, null, null);
+
+        StringBuilder text = new StringBuilder();
+        if (metrics == null || metrics.isEmpty()) {
+            text.append(getString(R.string.metrics_empty)).append('\n');
+        } else {
+            text.append(String.format(Locale.US, ROW_FORMAT, "pattern:op", "count", "total_ms",
+                    "p50_ms", "p90_ms", "p99_ms", "rows", "bytes"));
+
+            List<String> keys = new ArrayList<String>(metrics.keySet());
+            Collections.sort(keys);
+            for (String key : keys) {
+                Bundle metric = metrics.getBundle(key);
+                text.append(String.format(Locale.US, ROW_FORMAT, key,
+                        metric.getLong(NotePad.KEY_METRIC_COUNT),
+                        formatMillis(metric.getDouble(NotePad.KEY_METRIC_TOTAL_MILLIS)),
+                        formatMillis(metric.getDouble(NotePad.KEY_METRIC_P50_MILLIS)),
+                        formatMillis(metric.getDouble(NotePad.KEY_METRIC_P90_MILLIS)),
+                        formatMillis(metric.getDouble(NotePad.KEY_METRIC_P99_MILLIS)),
+                        metric.getLong(NotePad.KEY_METRIC_ROWS),
+                        metric.getLong(NotePad.KEY_METRIC_BYTES)));
+            }
+        }
+
+        if (rowCache != null) {
+            text.append('\n').append(String.format(Locale.US,
+                    "row cache: hits=%d misses=%d size=%d bytes=%d",
+                    rowCache.getLong(NotePad.KEY_ROW_CACHE_HITS),
+                    rowCache.getLong(NotePad.KEY_ROW_CACHE_MISSES),
+                    rowCache.getInt(NotePad.KEY_ROW_CACHE_SIZE),
+                    rowCache.getLong(NotePad.KEY_ROW_CACHE_BYTES)));
+        }
+        mText.setText(text);
+    }
+
+    private static String formatMillis(double millis) {
+        return String.format(Locale.US, "%.2f", millis);
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabaseLockedException;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * NotePadProvider 的并发压力测试。多个读线程和写线程同时调用同一个提供者实例（与多个客户端的 binder
+ * 线程共享一个 DatabaseHelper 的情况相同），报告每增加一个线程时吞吐量的变化。
+ * <p>
+ * 每个写线程只更新属于自己的笔记，并记住最后写入的内容；每一步结束后逐条核对，内容不一致即为丢失的更新。
+ * 任何异常（包括 SQLiteDatabaseLockedException）、丢失的更新、读不到的笔记或笔记数量的变化都使测试失败。
+ * <p>
+ * 参数（am instrument -e）：readers 最多的读线程数，默认 4；writers 最多的写线程数，默认 4；
+ * seconds 每一步的秒数，默认 5；notes 预先插入的笔记数量，默认 10000；seed 随机数种子，默认 42。
+ * 预先插入的笔记由 {@link NoteCorpus} 生成，内容长度不超过 4096 个字符。
+ */
+public class ProviderStress extends Instrumentation {
+
+    private static final String TAG = "ProviderStress";
+
+    // 预先插入笔记时每个事务插入的笔记数量
+    private static final int SEED_BATCH_SIZE = 500;
+
+    // 预先插入的笔记的内容长度上限
+    private static final int MAX_BODY_LENGTH = 4096;
+
+    private static final String[] LIST_PROJECTION = new String[] {
+            NotePad.Notes._ID,
+            NotePad.Notes.COLUMN_NAME_TITLE,
+            NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE,
+            NotePad.Notes.COLUMN_NAME_PREVIEW,
+            NotePad.Notes.COLUMN_NAME_COLOR
+    };
+
+    private static final String[] NOTE_PROJECTION = new String[] {
+            NotePad.Notes.COLUMN_NAME_NOTE
+    };
+
+    private int mMaxReaders = 4;
+    private int mMaxWriters = 4;
+    private long mStepMillis = 5000;
+    private int mNotes = 10000;
+    private long mSeed = 42;
+
+    private NotePadProvider mProvider;
+    private final StringBuilder mReport = new StringBuilder();
+
+    /**
+     * 一步的统计结果。
+     */
+    private static class StepResult {
+        final AtomicInteger readOps = new AtomicInteger();
+        final AtomicInteger writeOps = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        final AtomicInteger lockedErrors = new AtomicInteger();
+        final AtomicReference<Throwable> firstError = new AtomicReference<Throwable>();
+        int lostUpdates;
+        int finalCount;
+        double seconds;
+
+        double readsPerSecond() {
+            return readOps.get() / seconds;
+        }
+
+        double writesPerSecond() {
+            return writeOps.get() / seconds;
+        }
+
+        int failures(int expectedCount) {
+            return errors.get() + lostUpdates + (finalCount != expectedCount ? 1 : 0);
+        }
+    }
+
+    /**
+     * 在截止时间之前反复执行一项操作的线程。
+     */
+    private abstract class Worker extends Thread {
+        final Random mRandom;
+        final StepResult mResult;
+        private final CountDownLatch mStart;
+        private final long mDurationNanos;
+
+        Worker(long seed, StepResult result, CountDownLatch start, long durationNanos) {
+            mRandom = new Random(seed);
+            mResult = result;
+            mStart = start;
+            mDurationNanos = durationNanos;
+        }
+
+        /**
+         * 执行一次操作。
+         */
+        abstract void runOnce(int k);
+
+        @Override
+        public void run() {
+            try {
+                mStart.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long deadline = System.nanoTime() + mDurationNanos;
+            for (int k = 0; System.nanoTime() < deadline; k++) {
+                try {
+                    runOnce(k);
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        void fail(Throwable e) {
+            mResult.errors.incrementAndGet();
+            if (e instanceof SQLiteDatabaseLockedException) {
+                mResult.lockedErrors.incrementAndGet();
+            }
+            if (mResult.firstError.compareAndSet(null, e)) {
+                Log.e(TAG, "Operation failed", e);
+            }
+        }
+
+        long randomId() {
+            return 1 + mRandom.nextInt(mNotes);
+        }
+    }
+
+    /**
+     * 轮流读取列表的第一页、读取一条随机的笔记和搜索。
+     */
+    private class Reader extends Worker {
+        Reader(long seed, StepResult result, CountDownLatch start, long durationNanos) {
+            super(seed, result, start, durationNanos);
+        }
+
+        @Override
+        void runOnce(int k) {
+            Cursor c;
+            switch (k % 3) {
+                case 0:
+                    c = mProvider.query(NotePad.Notes.CONTENT_URI.buildUpon()
+                            .appendQueryParameter(NotePad.Notes.LIMIT_QUERY_PARAMETER, "100")
+                            .build(), LIST_PROJECTION, null, null, NotePad.Notes.PAGED_SORT_ORDER);
+                    break;
+                case 1:
+                    // 预先插入的笔记不会被删除，必须总能读到
+                    c = mProvider.query(noteUri(randomId()), NOTE_PROJECTION, null, null, null);
+                    if (c.getCount() != 1) {
+                        c.close();
+                        throw new IllegalStateException("Seeded note missing");
+                    }
+                    break;
+                default:
+                    c = mProvider.query(NotePad.Notes.CONTENT_SEARCH_URI.buildUpon()
+                            .appendQueryParameter(NotePad.Notes.SEARCH_QUERY_PARAMETER,
+                                    NoteCorpus.word(k))
+                            .appendQueryParameter(NotePad.Notes.LIMIT_QUERY_PARAMETER, "100")
+                            .build(), LIST_PROJECTION, null, null, null);
+                    break;
+            }
+            try {
+                while (c.moveToNext()) {
+                    c.getString(0);
+                }
+            } finally {
+                c.close();
+            }
+            mResult.readOps.incrementAndGet();
+        }
+    }
+
+    /**
+     * 更新属于自己的笔记；每四次操作中有一次插入一条临时笔记，然后把它删除。
+     * 编号为 index 的写线程拥有 (id - 1) % writers == index 的笔记。
+     */
+    private class Writer extends Worker {
+        final int mIndex;
+        final int mWriters;
+        final Map<Long, String> mLastWritten = new HashMap<Long, String>();
+
+        Writer(int index, int writers, long seed, StepResult result, CountDownLatch start,
+                long durationNanos) {
+            super(seed, result, start, durationNanos);
+            mIndex = index;
+            mWriters = writers;
+        }
+
+        @Override
+        void runOnce(int k) {
+            if (k % 4 == 3) {
+                Uri uri = mProvider.insert(NotePad.Notes.CONTENT_URI, newNote("temp " + k));
+                if (uri == null || mProvider.delete(uri, null, null) != 1) {
+                    throw new IllegalStateException("Temporary note not inserted and deleted");
+                }
+            } else {
+                long owned = (mNotes - 1 - mIndex) / mWriters + 1;
+                long id = 1 + mIndex + mWriters * (long) mRandom.nextInt((int) owned);
+                String body = "note writer " + mIndex + " write " + k;
+                ContentValues values = new ContentValues();
+                values.put(NotePad.Notes.COLUMN_NAME_NOTE, body);
+                values.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, System.currentTimeMillis());
+                if (mProvider.update(noteUri(id), values, null, null) != 1) {
+                    throw new IllegalStateException("Owned note not updated: " + id);
+                }
+                mLastWritten.put(id, body);
+            }
+            mResult.writeOps.incrementAndGet();
+        }
+
+        /**
+         * @return 内容与最后一次写入不一致的笔记数量。
+         */
+        int countLostUpdates() {
+            int lost = 0;
+            for (Map.Entry<Long, String> entry : mLastWritten.entrySet()) {
+                Cursor c = mProvider.query(noteUri(entry.getKey()), NOTE_PROJECTION,
+                        null, null, null);
+                try {
+                    if (!c.moveToFirst() || !entry.getValue().equals(c.getString(0))) {
+                        lost++;
+                    }
+                } finally {
+                    c.close();
+                }
+            }
+            return lost;
+        }
+    }
+
+    @Override
+    public void onCreate(Bundle arguments) {
+        super.onCreate(arguments);
+        if (arguments != null) {
+            mMaxReaders = intArgument(arguments, "readers", mMaxReaders);
+            mMaxWriters = intArgument(arguments, "writers", mMaxWriters);
+            mStepMillis = intArgument(arguments, "seconds", (int) (mStepMillis / 1000)) * 1000L;
+            mNotes = intArgument(arguments, "notes", mNotes);
+            mSeed = intArgument(arguments, "seed", (int) mSeed);
+        }
+        start();
+    }
+
+    @Override
+    public void onStart() {
+        BenchmarkContext context = new BenchmarkContext(getTargetContext());
+        mProvider = context.newProvider();
+
+        int failures = 0;
+        try {
+            seed();
+            report(String.format(Locale.US, "notes=%d step=%dms", mNotes, mStepMillis));
+
+            // 只有读线程，逐个增加
+            double singleReader = 0;
+            for (int readers = 1; readers <= mMaxReaders; readers++) {
+                StepResult result = runStep(readers, 0);
+                if (readers == 1) {
+                    singleReader = result.readsPerSecond();
+                }
+                report(String.format(Locale.US,
+                        "readers=%d writers=0  reads=%.1f/s (%.2fx)  errors=%d",
+                        readers, result.readsPerSecond(),
+                        result.readsPerSecond() / Math.max(singleReader, 1e-9), result.errors.get()));
+                failures += checkStep(result);
+            }
+
+            // 只有写线程，逐个增加
+            double singleWriter = 0;
+            for (int writers = 1; writers <= mMaxWriters; writers++) {
+                StepResult result = runStep(0, writers);
+                if (writers == 1) {
+                    singleWriter = result.writesPerSecond();
+                }
+                report(String.format(Locale.US,
+                        "readers=0 writers=%d  writes=%.1f/s (%.2fx)  errors=%d lost=%d",
+                        writers, result.writesPerSecond(),
+                        result.writesPerSecond() / Math.max(singleWriter, 1e-9),
+                        result.errors.get(), result.lostUpdates));
+                failures += checkStep(result);
+            }
+
+            // 读写混合
+            if (mMaxReaders > 0 && mMaxWriters > 0) {
+                StepResult result = runStep(mMaxReaders, mMaxWriters);
+                report(String.format(Locale.US,
+                        "readers=%d writers=%d  reads=%.1f/s writes=%.1f/s  errors=%d lost=%d",
+                        mMaxReaders, mMaxWriters, result.readsPerSecond(),
+                        result.writesPerSecond(), result.errors.get(), result.lostUpdates));
+                failures += checkStep(result);
+            }
+        } catch (InterruptedException e) {
+            report("interrupted");
+            failures++;
+        } finally {
+            context.release(mProvider);
+        }
+
+        report(failures == 0 ? "OK" : "FAILED: " + failures + " failure(s)");
+        Bundle status = new Bundle();
+        status.putString(Instrumentation.REPORT_KEY_STREAMRESULT, mReport.toString());
+        finish(failures == 0 ? Activity.RESULT_OK : Activity.RESULT_CANCELED, status);
+    }
+
+    /**
+     * 同时启动给定数量的读线程和写线程，运行一步，然后核对写入的结果和笔记数量。
+     */
+    private StepResult runStep(int readers, int writers) throws InterruptedException {
+        StepResult result = new StepResult();
+        CountDownLatch start = new CountDownLatch(1);
+        long durationNanos = mStepMillis * 1000000L;
+
+        Worker[] workers = new Worker[readers + writers];
+        for (int i = 0; i < readers; i++) {
+            workers[i] = new Reader(mSeed + i, result, start, durationNanos);
+        }
+        for (int i = 0; i < writers; i++) {
+            workers[readers + i] = new Writer(i, writers, mSeed + 1000 + i, result, start,
+                    durationNanos);
+        }
+        for (Worker worker : workers) {
+            worker.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Worker worker : workers) {
+            worker.join();
+        }
+        result.seconds = (System.nanoTime() - begin) / 1e9;
+
+        for (Worker worker : workers) {
+            if (worker instanceof Writer) {
+                result.lostUpdates += ((Writer) worker).countLostUpdates();
+            }
+        }
+        result.finalCount = countNotes();
+        return result;
+    }
+
+    /**
+     * 报告一步中的问题。
+     *
+     * @return 问题的数量。
+     */
+    private int checkStep(StepResult result) {
+        int failures = result.failures(mNotes);
+        if (result.lockedErrors.get() > 0) {
+            report("  SQLiteDatabaseLockedException: " + result.lockedErrors.get());
+        }
+        if (result.firstError.get() != null) {
+            report("  first error: " + result.firstError.get());
+        }
+        if (result.lostUpdates > 0) {
+            report("  lost updates: " + result.lostUpdates);
+        }
+        if (result.finalCount != mNotes) {
+            report("  note count " + result.finalCount + ", expected " + mNotes);
+        }
+        return failures;
+    }
+
+    private void seed() {
+        NoteCorpus corpus = new NoteCorpus(mSeed, MAX_BODY_LENGTH);
+        int inserted = 0;
+        while (inserted < mNotes) {
+            int batch = Math.min(SEED_BATCH_SIZE, mNotes - inserted);
+            ContentValues[] values = new ContentValues[batch];
+            for (int i = 0; i < batch; i++) {
+                corpus.next();
+                values[i] = new ContentValues();
+                values[i].put(NotePad.Notes.COLUMN_NAME_TITLE, corpus.getTitle());
+                values[i].put(NotePad.Notes.COLUMN_NAME_NOTE, corpus.getBody());
+                values[i].put(NotePad.Notes.COLUMN_NAME_CREATE_DATE, corpus.getCreated());
+                values[i].put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, corpus.getModified());
+            }
+            mProvider.bulkInsert(NotePad.Notes.CONTENT_URI, values);
+            inserted += batch;
+        }
+    }
+
+    private int countNotes() {
+        Cursor c = mProvider.query(NotePad.Notes.CONTENT_URI,
+                new String[] { NotePad.Notes._ID }, null, null, null);
+        try {
+            return c.getCount();
+        } finally {
+            c.close();
+        }
+    }
+
+    private static ContentValues newNote(String body) {
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_TITLE, NoteText.deriveTitle(body));
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, body);
+        return values;
+    }
+
+    private static Uri noteUri(long id) {
+        return ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, id);
+    }
+
+    private static int intArgument(Bundle arguments, String key, int defaultValue) {
+        String value = arguments.getString(key);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    /**
+     * 把一行报告发送给 am instrument，并加入最终的报告。
+     */
+    private void report(String line) {
+        Log.i(TAG, line);
+        mReport.append(line).append('\n');
+        Bundle status = new Bundle();
+        status.putString(Instrumentation.REPORT_KEY_STREAMRESULT, line + "\n");
+        sendStatus(0, status);
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Handler;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
+import android.widget.EditText;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * NoteEditor 使用的后台自动保存引擎。
+ * 它监听编辑框的文本变化并记录"脏"状态；编辑停止一段时间后，或者调用 {@link #flush()} 时，
+ * 才把文本交给后台写线程。写线程会跳过与上次保存内容相同的文本，因此没有修改时不会写数据库。
+ * 编辑很大的笔记时，编辑框中只有笔记的一段（{@link NoteWindow}），保存时只替换这一段分块。
+ * 除写线程外，所有方法都必须在 UI 线程上调用。
+ */
+class NoteAutosaver implements TextWatcher {
+
+    // 用于日志记录和调试
+    private static final String TAG = "NoteAutosaver";
+
+    /**
+     * 最后一次编辑之后等待多长时间才自动保存（毫秒）
+     */
+    private static final long AUTOSAVE_DELAY_MS = 2000;
+
+    /**
+     * 所有编辑器共享的写线程。单线程保证同一笔记的写入按提交顺序执行，
+     * 即使 Activity 因配置变化而重建也是如此。
+     */
+    private static final ExecutorService sWriteExecutor = Executors.newSingleThreadExecutor();
+
+    private final ContentResolver mResolver;
+    private final Uri mUri;
+    private final Handler mHandler = new Handler();
+
+    private EditText mText;
+
+    // 自上次提交保存以来文本是否被修改过
+    private boolean mDirty;
+
+    // 是否同时根据内容更新标题（新建的笔记）
+    private boolean mDeriveTitle;
+
+    // 最后一次写入或从提供者读出的文本。只在写线程上访问。
+    private String mSavedText;
+
+    // 编辑框中正在编辑的一段；编辑完整的笔记时为 null
+    private NoteWindow mWindow;
+
+    /**
+     * 相邻的段加载完成时的回调，在 UI 线程上调用。
+     */
+    interface WindowListener {
+        void onWindowLoaded(NoteWindow window);
+    }
+
+    private final Runnable mAutosave = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    NoteAutosaver(ContentResolver resolver, Uri uri) {
+        mResolver = resolver;
+        mUri = uri;
+    }
+
+    /**
+     * 开始跟踪给定编辑框中的修改。
+     */
+    void attach(EditText text) {
+        mText = text;
+        mText.addTextChangedListener(this);
+    }
+
+    /**
+     * 设置编辑框中正在编辑的一段。之后的保存只替换这一段分块。
+     */
+    void setWindow(NoteWindow window) {
+        mWindow = window;
+    }
+
+    /**
+     * 保存当前一段的修改，然后在写线程上加载相邻的一段。加载在之前所有的写入完成之后进行，
+     * 因此能看到当前这一段保存后的结束位置。如果没有相邻的一段，则不调用回调。
+     */
+    void moveWindow(final boolean forward, final WindowListener listener) {
+        flush();
+        final NoteWindow current = mWindow;
+        if (current == null) {
+            return;
+        }
+        sWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                NoteWindow next = forward
+                        ? current.loadNext(mResolver) : current.loadPrevious(mResolver);
+                postWindow(current, next, listener);
+            }
+        });
+    }
+
+    /**
+     * 在写线程上加载从 start 开始的一段，作为编辑框中正在编辑的一段。
+     * 如果笔记已被删除，则不调用回调。
+     */
+    void loadWindow(final long noteId, final int start, final WindowListener listener) {
+        flush();
+        final NoteWindow current = mWindow;
+        sWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                postWindow(current, NoteWindow.load(mResolver, noteId, start), listener);
+            }
+        });
+    }
+
+    /**
+     * 在 UI 线程上切换到加载完成的一段。如果加载期间编辑框已经换了一段，则丢弃加载的这一段。
+     */
+    private void postWindow(final NoteWindow current, final NoteWindow next,
+            final WindowListener listener) {
+        if (next == null) {
+            return;
+        }
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mWindow != current) {
+                    return;
+                }
+                // 加载期间的修改仍然属于当前这一段
+                flush();
+                mWindow = next;
+                listener.onWindowLoaded(next);
+                markSaved(next.getText());
+            }
+        });
+    }
+
+    /**
+     * 设置保存时是否根据内容重新生成标题。
+     */
+    void setDeriveTitle(boolean deriveTitle) {
+        mDeriveTitle = deriveTitle;
+    }
+
+    /**
+     * 记录编辑框中的文本已经与提供者中的内容一致，例如刚从提供者读出之后。
+     */
+    void markSaved(final String text) {
+        discard();
+        sWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mSavedText = text;
+            }
+        });
+    }
+
+    /**
+     * 如果有未保存的修改，立即把当前文本交给写线程。不会阻塞调用线程。
+     */
+    void flush() {
+        mHandler.removeCallbacks(mAutosave);
+        if (!mDirty || mText == null) {
+            return;
+        }
+        mDirty = false;
+        enqueue(mText.getText().toString(), mDeriveTitle);
+    }
+
+    /**
+     * 不论是否有修改，都把给定文本写入提供者，例如还原原始内容时。
+     * 任何未保存的修改都会被丢弃。
+     */
+    void save(String text) {
+        discard();
+        enqueue(text, mDeriveTitle);
+    }
+
+    /**
+     * 在写线程上保存笔记的背景颜色，与内容的保存按提交顺序执行。颜色不是内容的修改，不更新修改日期。
+     */
+    void saveColor(final int color) {
+        sWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ContentValues values = new ContentValues();
+                values.put(NotePad.Notes.COLUMN_NAME_COLOR, color);
+                if (mResolver.update(mUri, values, null, null) == 0) {
+                    Log.w(TAG, "Note no longer exists, color dropped: " + mUri);
+                }
+            }
+        });
+    }
+
+    /**
+     * 丢弃未保存的修改和等待中的自动保存。已经交给写线程的保存不受影响。
+     */
+    void discard() {
+        mHandler.removeCallbacks(mAutosave);
+        mDirty = false;
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        mDirty = true;
+        mHandler.removeCallbacks(mAutosave);
+        mHandler.postDelayed(mAutosave, AUTOSAVE_DELAY_MS);
+    }
+
+    private void enqueue(final String text, final boolean deriveTitle) {
+        // 写入提交时正在编辑的一段，之后切换到其他段不影响这次写入
+        final NoteWindow window = mWindow;
+        sWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // 文本与上次保存的完全相同时跳过写入
+                if (text.equals(mSavedText)) {
+                    return;
+                }
+                if (window != null) {
+                    if (!window.write(mResolver, text)) {
+                        Log.w(TAG, "Note no longer exists, autosave dropped: " + mUri);
+                    }
+                } else {
+                    write(text, deriveTitle);
+                }
+                mSavedText = text;
+            }
+        });
+    }
+
+    /**
+     * 在写线程上把文本写入提供者。
+     */
+    private void write(String text, boolean deriveTitle) {
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, System.currentTimeMillis());
+        if (deriveTitle) {
+            values.put(NotePad.Notes.COLUMN_NAME_TITLE, NoteText.deriveTitle(text));
+        }
+        values.put(NotePad.Notes.COLUMN_NAME_NOTE, text);
+
+        // 笔记可能已经被删除，此时不会更新任何行
+        int count = mResolver.update(mUri, values, null, null);
+        if (count == 0) {
+            Log.w(TAG, "Note no longer exists, autosave dropped: " + mUri);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * 读取分块存储的笔记内容。每次查询只取一小段连续的分块，
+ * 因此单个游标窗口的大小与笔记的总长度无关。
+ */
+final class NoteBodyReader {
+
+    /**
+     * 每次查询读取的分块数量
+     */
+    static final int CHUNKS_PER_QUERY = 8;
+
+    private static final String[] CHUNK_PROJECTION = new String[] {
+            NotePad.NoteChunks.COLUMN_NAME_TEXT
+    };
+
+    // 此类无法被实例化
+    private NoteBodyReader() {
+    }
+
+    /**
+     * 读取从 start 开始的最多 count 个分块，并把它们按顺序追加到 out。
+     *
+     * @return 实际读取的分块数量。
+     */
+    static int readChunks(ContentResolver resolver, long noteId, int start, int count,
+                          StringBuilder out) {
+        Uri uri = NotePad.NoteChunks.buildChunksUri(noteId).buildUpon()
+                .appendQueryParameter(NotePad.NoteChunks.START_QUERY_PARAMETER,
+                        Integer.toString(start))
+                .appendQueryParameter(NotePad.Notes.LIMIT_QUERY_PARAMETER,
+                        Integer.toString(count))
+                .build();
+
+        Cursor c = resolver.query(uri, CHUNK_PROJECTION, null, null, null);
+        if (c == null) {
+            return 0;
+        }
+        try {
+            while (c.moveToNext()) {
+                out.append(c.getString(0));
+            }
+            return c.getCount();
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * 读取笔记的完整内容。
+     *
+     * @param cursor 位于该笔记所在行的游标，必须包含 _id、note 和 chunk_count 列。
+     * @return 完整的笔记内容；没有分块时直接返回 note 列。
+     */
+    static String readBody(ContentResolver resolver, Cursor cursor) {
+        String note = cursor.getString(cursor.getColumnIndex(NotePad.Notes.COLUMN_NAME_NOTE));
+        int chunkCount = cursor.getInt(
+                cursor.getColumnIndex(NotePad.Notes.COLUMN_NAME_CHUNK_COUNT));
+        if (chunkCount == 0) {
+            return note;
+        }
+
+        long noteId = cursor.getLong(cursor.getColumnIndex(NotePad.Notes._ID));
+        StringBuilder body = new StringBuilder(chunkCount * NotePad.NoteChunks.CHUNK_SIZE);
+        for (int start = 0; ; start += CHUNKS_PER_QUERY) {
+            if (readChunks(resolver, noteId, start, CHUNKS_PER_QUERY, body) < CHUNKS_PER_QUERY) {
+                break;
+            }
+        }
+        return body.toString();
+    }
+}
@@ -16,17 +16,18 @@
 
 package com.example.android.notepad;
 
+import android.app.ActionBar;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.ClipData;
 import android.content.ClipboardManager;
 import android.content.ComponentName;
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Canvas;
@@ -35,6 +36,7 @@ import android.graphics.Paint;
 import android.graphics.Rect;
 import android.net.Uri;
 import android.os.Bundle;
+import android.text.Layout;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.Menu;
@@ -60,11 +62,14 @@ public class NoteEditor extends Activity {
             new String[] {
                     NotePad.Notes._ID,
                     NotePad.Notes.COLUMN_NAME_TITLE,
-                    NotePad.Notes.COLUMN_NAME_NOTE
+                    NotePad.Notes.COLUMN_NAME_NOTE,
+                    NotePad.Notes.COLUMN_NAME_CHUNK_COUNT,
+                    NotePad.Notes.COLUMN_NAME_COLOR
             };
 
     // Activity 保存状态的标签
     private static final String ORIGINAL_CONTENT = "origContent";
+    private static final String WINDOW_START = "windowStart";
 
     // 此 Activity 可以通过多个操作启动。每个操作作为一个“状态”常量表示
     private static final int STATE_EDIT = 0;
@@ -77,13 +82,31 @@ public class NoteEditor extends Activity {
     private EditText mText;
     private String mOriginalContent;
 
+    // 在后台保存编辑内容
+    private NoteAutosaver mAutosaver;
+
+    // 编辑框中是否已经有文本（首次从提供者读出，或由保存的实例状态恢复）
+    private boolean mTextLoaded;
+
+    // 很大的笔记按段编辑：编辑框中这一段的第一个分块的序号，编辑完整的笔记时为 -1
+    private int mWindowStart = -1;
+
+    // 编辑框中显示的一段，还没有加载完成时为 null
+    private NoteWindow mWindow;
+
     /**
      * 定义一个自定义 EditText 视图，它在显示的每行文本之间绘制线条。
+     * 只绘制与画布裁剪区域相交的行，所有线条通过一次 drawLines() 调用绘制，
+     * 因此绘制的开销只与可见的行数有关，与笔记的总行数无关。
      */
     public static class LinedEditText extends EditText {
+
         private Rect mRect;
         private Paint mPaint;
 
+        // drawLines() 的坐标缓冲区，每条线 4 个值，只在需要更多的行时扩大
+        private float[] mLinePoints = new float[0];
+
         // 此构造函数由 LayoutInflater 使用
         public LinedEditText(Context context, AttributeSet attrs) {
             super(context, attrs);
@@ -104,31 +127,40 @@ public class NoteEditor extends Activity {
          */
         @Override
         protected void onDraw(Canvas canvas) {
+            // 把画布的裁剪区域换算为布局中的行范围，只为这些行绘制线条
+            Layout layout = getLayout();
+            Rect clip = mRect;
+            if (layout != null && canvas.getClipBounds(clip)) {
+                int paddingTop = getExtendedPaddingTop();
+                int first = layout.getLineForVertical(Math.max(0, clip.top - paddingTop));
+                int last = layout.getLineForVertical(Math.max(0, clip.bottom - paddingTop));
+                drawRules(canvas, first, last);
+            }
 
-            // 获取 View 中的文本行数。
-            int count = getLineCount();
+            // 完成后调用父方法
+            super.onDraw(canvas);
+        }
 
-            // 获取全局 Rect 和 Paint 对象
-            Rect r = mRect;
-            Paint paint = mPaint;
+        /**
+         * 在第 first 行到第 last 行（含）的基线以下一个像素处各绘制一条线。
+         */
+        private void drawRules(Canvas canvas, int first, int last) {
+            int count = last - first + 1;
+            if (mLinePoints.length < count * 4) {
+                mLinePoints = new float[count * 4];
+            }
 
-            /*
-             * 为 EditText 中的每一行文本在矩形中绘制一条线
-             */
+            Rect r = mRect;
+            float[] points = mLinePoints;
             for (int i = 0; i < count; i++) {
-
                 // 获取当前文本行的基线坐标
-                int baseline = getLineBounds(i, r);
-
-                /*
-                 * 在矩形的左侧到右侧绘制一条线，
-                 * 在基线以下一 dip 的垂直位置使用“paint”对象进行细节处理。
-                 */
-                canvas.drawLine(r.left, baseline + 1, r.right, baseline + 1, paint);
+                int baseline = getLineBounds(first + i, r);
+                points[i * 4] = r.left;
+                points[i * 4 + 1] = baseline + 1;
+                points[i * 4 + 2] = r.right;
+                points[i * 4 + 3] = baseline + 1;
             }
-
-            // 完成后调用父方法
-            super.onDraw(canvas);
+            canvas.drawLines(points, 0, count * 4, mPaint);
         }
     }
 
@@ -221,17 +253,83 @@ public class NoteEditor extends Activity {
         // 获取布局中 EditText 的句柄。
         mText = (EditText) findViewById(R.id.note);
 
-        // 从 SharedPreferences 中获取背景颜色
-        SharedPreferences sharedPreferences = getSharedPreferences("MyNotesApp", MODE_PRIVATE);
-        int savedColor = sharedPreferences.getInt("backgroundColor", Color.LTGRAY); // 默认颜色为浅灰
-        mText.setBackgroundColor(savedColor); // 设置 EditText 背景颜色
+        // 跟踪编辑框中的修改，在后台自动保存。新建的笔记在保存时根据内容生成标题。
+        mAutosaver = new NoteAutosaver(getContentResolver(), mUri);
+        mAutosaver.attach(mText);
+        mAutosaver.setDeriveTitle(mState == STATE_INSERT);
 
         /*
          * 如果此 Activity 之前已停止，则其状态已写入保存的实例状态中的 ORIGINAL_CONTENT 位置。获取该状态。
+         * 编辑框会自己恢复文本，恢复的文本会被当作修改再保存一次。
          */
         if (savedInstanceState != null) {
             mOriginalContent = savedInstanceState.getString(ORIGINAL_CONTENT);
+            mTextLoaded = true;
+
+            // 编辑框恢复的是一段的文本，需要重新加载这一段，以后的保存才会只替换这一段
+            mWindowStart = savedInstanceState.getInt(WINDOW_START, -1);
+            if (mWindowStart >= 0) {
+                loadWindow(mWindowStart, true);
+            }
+        }
+    }
+
+    /**
+     * 保存正在编辑的一段的位置。编辑框自己保存文本。
+     */
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(WINDOW_START, mWindowStart);
+    }
+
+    /**
+     * 在写线程上加载从 start 开始的一段，加载完成之前编辑框不可编辑。
+     *
+     * @param keepText 是否保留编辑框中的文本（由保存的实例状态恢复时）
+     */
+    private void loadWindow(int start, final boolean keepText) {
+        mWindowStart = start;
+        mText.setEnabled(false);
+        mAutosaver.loadWindow(ContentUris.parseId(mUri), start,
+                new NoteAutosaver.WindowListener() {
+                    @Override
+                    public void onWindowLoaded(NoteWindow window) {
+                        showWindow(window, keepText);
+                    }
+                });
+    }
+
+    /**
+     * 保存当前一段的修改，然后切换到相邻的一段。
+     */
+    private void moveWindow(boolean forward) {
+        mAutosaver.moveWindow(forward, new NoteAutosaver.WindowListener() {
+            @Override
+            public void onWindowLoaded(NoteWindow window) {
+                showWindow(window, false);
+            }
+        });
+    }
+
+    /**
+     * 在编辑框中显示加载完成的一段。还原修改只作用于这一段。
+     */
+    private void showWindow(NoteWindow window, boolean keepText) {
+        mWindow = window;
+        mWindowStart = window.getStart();
+        if (!keepText) {
+            mText.setText(window.getText());
         }
+        mOriginalContent = window.getText();
+        mText.setEnabled(true);
+
+        ActionBar actionBar = getActionBar();
+        if (actionBar != null) {
+            actionBar.setSubtitle(getString(R.string.window_position, window.getStart() + 1,
+                    window.getEnd(), window.getTotalChunks()));
+        }
+        invalidateOptionsMenu();
     }
 
     /**
@@ -253,6 +351,10 @@ public class NoteEditor extends Activity {
              */
             mCursor.moveToFirst();
 
+            // 设置 EditText 背景颜色。颜色保存在笔记行中，没有选择颜色时使用浅灰色。
+            int color = mCursor.getInt(mCursor.getColumnIndex(NotePad.Notes.COLUMN_NAME_COLOR));
+            mText.setBackgroundColor(color != 0 ? color : Color.LTGRAY);
+
             // 根据当前 Activity 状态修改 Activity 窗口标题。
             if (mState == STATE_EDIT) {
                 // 将 Activity 的标题设置为包含便签标题
@@ -268,17 +370,32 @@ public class NoteEditor extends Activity {
 
             /*
              * onResume() 可能在 Activity 失去焦点后被调用（被暂停）。用户在 Activity 暂停时正在编辑或创建便签。
-             * Activity 应该重新显示先前检索的文本，但不应移动光标。这有助于用户继续编辑或输入。
+             * 暂停时的保存是在后台进行的，此时重新查询到的可能还是旧文本，所以只在第一次显示时
+             * 把提供者中的文本放入编辑框；之后编辑框中的文本总是最新的。
              */
 
-            // 从 Cursor 获取便签文本，并将其放入 TextView，但不更改文本光标的位置。
-            int colNoteIndex = mCursor.getColumnIndex(NotePad.Notes.COLUMN_NAME_NOTE);
-            String note = mCursor.getString(colNoteIndex);
-            mText.setTextKeepState(note);
+            // 很大的笔记只把一段放进编辑框，打开的时间和占用的内存与笔记的总长度无关
+            int chunkCount = mCursor.getInt(
+                    mCursor.getColumnIndex(NotePad.Notes.COLUMN_NAME_CHUNK_COUNT));
+            if (!mTextLoaded && chunkCount > NoteWindow.LARGE_NOTE_CHUNKS) {
+                mTextLoaded = true;
+                loadWindow(0, false);
+            }
+
+            if (mWindowStart < 0 && (!mTextLoaded || mOriginalContent == null)) {
+                // 从 Cursor 获取便签文本，并将其放入 TextView，但不更改文本光标的位置。
+                // 分块存储的内容按分块读取，note 列中只有第一个分块。
+                String note = NoteBodyReader.readBody(getContentResolver(), mCursor);
+                if (!mTextLoaded) {
+                    mText.setTextKeepState(note);
+                    mAutosaver.markSaved(note);
+                    mTextLoaded = true;
+                }
 
-            // 存储原始便签文本，以便允许用户撤销更改。
-            if (mOriginalContent == null) {
-                mOriginalContent = note;
+                // 存储原始便签文本，以便允许用户撤销更改。
+                if (mOriginalContent == null) {
+                    mOriginalContent = note;
+                }
             }
 
             /*
@@ -308,26 +425,27 @@ public class NoteEditor extends Activity {
          */
         if (mCursor != null) {
 
-            // 获取当前便签文本。
-            String text = mText.getText().toString();
-            int length = text.length();
+            // 获取当前便签文本的长度。
+            int length = mText.length();
 
             /*
+             * 按段编辑时编辑框中只有一段，清空这一段不等于清空便签。
              * 如果 Activity 正在结束且当前便签中没有文本，则返回 RESULT_CANCELED 给调用者，并删除便签。即使便签正在编辑，假设用户想要“清空”（删除）便签，也是如此。
              */
-            if (isFinishing() && (length == 0)) {
+            if (isFinishing() && (length == 0) && mWindowStart < 0) {
                 setResult(RESULT_CANCELED);
                 deleteNote();
 
                 /*
-                 * 将编辑写入提供者。如果便签已被编辑，则获取的便签被检索到编辑器中 *或* 如果插入了新便签。后一种情况下， onCreate() 在提供者中插入了一个空的便签，而它正在编辑的是这个新便签。
+                 * 将未保存的编辑交给后台写线程。如果文本自上次保存以来没有变化，则不会写入提供者。
+                 * 新插入的便签在第一次保存后按普通编辑处理，不再根据内容更新标题。
                  */
-            } else if (mState == STATE_EDIT) {
-                // 创建一个映射，以包含要更新的列的新值
-                updateNote(text, null);
-            } else if (mState == STATE_INSERT) {
-                updateNote(text, text);
-                mState = STATE_EDIT;
+            } else {
+                mAutosaver.flush();
+                if (mState == STATE_INSERT) {
+                    mState = STATE_EDIT;
+                    mAutosaver.setDeriveTitle(false);
+                }
             }
         }
     }
@@ -359,15 +477,18 @@ public class NoteEditor extends Activity {
 
     @Override
     public boolean onPrepareOptionsMenu(Menu menu) {
-        // 检查便签是否已更改，并启用/禁用还原选项
-        int colNoteIndex = mCursor.getColumnIndex(NotePad.Notes.COLUMN_NAME_NOTE);
-        String savedNote = mCursor.getString(colNoteIndex);
+        // 检查便签是否已更改，并启用/禁用还原选项。与还原时使用的原始内容比较。
         String currentNote = mText.getText().toString();
-        if (savedNote.equals(currentNote)) {
+        if (currentNote.equals(mOriginalContent)) {
             menu.findItem(R.id.menu_revert).setVisible(false);
         } else {
             menu.findItem(R.id.menu_revert).setVisible(true);
         }
+
+        // 按段编辑时显示切换到相邻一段的选项
+        menu.findItem(R.id.menu_previous_section).setVisible(
+                mWindow != null && mWindow.hasPrevious());
+        menu.findItem(R.id.menu_next_section).setVisible(mWindow != null && mWindow.hasNext());
         return super.onPrepareOptionsMenu(menu);
     }
 
@@ -383,8 +504,7 @@ public class NoteEditor extends Activity {
         // 处理所有可能的菜单操作。
         switch (item.getItemId()) {
             case R.id.menu_save:
-                String text = mText.getText().toString();
-                updateNote(text, null);
+                mAutosaver.flush();
                 finish();
                 break;
             case R.id.menu_delete:
@@ -400,6 +520,12 @@ public class NoteEditor extends Activity {
             case R.id.menu_edit_color: //修改笔记背景颜色选项
                 showColorPickerDialog();
                 break;
+            case R.id.menu_previous_section:
+                moveWindow(false);
+                break;
+            case R.id.menu_next_section:
+                moveWindow(true);
+                break;
         }
         return super.onOptionsItemSelected(item);
     }
@@ -447,9 +573,8 @@ public class NoteEditor extends Activity {
                 // （moveToFirst() 返回 true），则从中获取便签数据。
                 if (orig != null) {
                     if (orig.moveToFirst()) {
-                        int colNoteIndex = mCursor.getColumnIndex(NotePad.Notes.COLUMN_NAME_NOTE);
                         int colTitleIndex = mCursor.getColumnIndex(NotePad.Notes.COLUMN_NAME_TITLE);
-                        text = orig.getString(colNoteIndex);
+                        text = NoteBodyReader.readBody(cr, orig);
                         title = orig.getString(colTitleIndex);
                     }
 
@@ -486,22 +611,7 @@ public class NoteEditor extends Activity {
 
             // 如果未提供标题作为参数，则从便签文本创建一个。
             if (title == null) {
-
-                // 获取便签的长度
-                int length = text.length();
-
-                // 设置标题，通过获取长度为 31 字符的文本子字符串
-                // 或便签中的字符数加 1（以较小者为准）。
-                title = text.substring(0, Math.min(30, length));
-
-                // 如果结果长度超过 30 字符，则剪掉任何
-                // 尾随空格
-                if (length > 30) {
-                    int lastSpace = title.lastIndexOf(' ');
-                    if (lastSpace > 0) {
-                        title = title.substring(0, lastSpace);
-                    }
-                }
+                title = NoteText.deriveTitle(text);
             }
             // 在值映射中设置标题的值
             values.put(NotePad.Notes.COLUMN_NAME_TITLE, title);
@@ -539,12 +649,10 @@ public class NoteEditor extends Activity {
     private final void cancelNote() {
         if (mCursor != null) {
             if (mState == STATE_EDIT) {
-                // 将原始便签文本放回数据库中
+                // 将原始便签文本放回数据库中。写入排在任何已提交的自动保存之后。
                 mCursor.close();
                 mCursor = null;
-                ContentValues values = new ContentValues();
-                values.put(NotePad.Notes.COLUMN_NAME_NOTE, mOriginalContent);
-                getContentResolver().update(mUri, values, null, null);
+                mAutosaver.save(mOriginalContent);
             } else if (mState == STATE_INSERT) {
                 // 我们插入了一个空便签，确保删除它
                 deleteNote();
@@ -561,6 +669,7 @@ public class NoteEditor extends Activity {
         if (mCursor != null) {
             mCursor.close();
             mCursor = null;
+            mAutosaver.discard();
             getContentResolver().delete(mUri, null, null);
             mText.setText("");
         }
@@ -595,11 +704,8 @@ public class NoteEditor extends Activity {
                 int selectedColor = colors[which];
                 mText.setBackgroundColor(selectedColor);
 
-                // 保存选择的颜色到 SharedPreferences
-                SharedPreferences sharedPreferences = getSharedPreferences("MyNotesApp", MODE_PRIVATE);
-                SharedPreferences.Editor editor = sharedPreferences.edit();
-                editor.putInt("backgroundColor", selectedColor);
-                editor.apply();
+                // 在后台把选择的颜色保存到这条笔记
+                mAutosaver.saveColor(selectedColor);
             }
         });
         builder.create().show();
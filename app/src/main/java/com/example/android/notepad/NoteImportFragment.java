@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.app.Activity;
+import android.app.Fragment;
+import android.app.FragmentManager;
+import android.app.ProgressDialog;
+import android.content.Context;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.Toast;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 在后台从用户选择的文件导入便签的无界面 Fragment，并用进度对话框显示已导入的数量。
+ * Fragment 在配置变化（例如旋转屏幕）时被保留，导入任务继续执行；
+ * 进度对话框属于当前的 Activity，在 Activity 分离时关闭，在新的 Activity 附加时重新显示。
+ * 每个批次提交后提供者只发出一次变化通知，列表随之重新加载。
+ */
+public class NoteImportFragment extends Fragment implements NoteImporter.ProgressListener {
+
+    // 用于日志记录和调试
+    private static final String TAG = "NoteImportFragment";
+
+    /**
+     * 在 FragmentManager 中查找此 Fragment 使用的标签
+     */
+    static final String FRAGMENT_TAG = "import_notes";
+
+    private static final String ARG_NOTES_URI = "notes_uri";
+    private static final String ARG_SOURCE_URI = "source_uri";
+
+    // 导入的结果
+    private static final int RESULT_DONE = 0;
+    private static final int RESULT_READ_ERROR = 1;
+    private static final int RESULT_FORMAT_ERROR = 2;
+
+    private Context mContext;
+    private ImportNotesTask mTask;
+    private ProgressDialog mDialog;
+
+    // 已导入的笔记数量，只在主线程上读写
+    private int mImported;
+
+    /**
+     * 开始从 source 导入笔记到 notesUri。如果已经有一个导入在进行，则忽略这次请求。
+     */
+    static void start(FragmentManager fm, Uri notesUri, Uri source) {
+        if (fm.findFragmentByTag(FRAGMENT_TAG) != null) {
+            return;
+        }
+        Bundle args = new Bundle();
+        args.putParcelable(ARG_NOTES_URI, notesUri);
+        args.putParcelable(ARG_SOURCE_URI, source);
+        NoteImportFragment fragment = new NoteImportFragment();
+        fragment.setArguments(args);
+        fm.beginTransaction().add(fragment, FRAGMENT_TAG).commit();
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setRetainInstance(true);
+        mContext = getActivity().getApplicationContext();
+
+        // 保留的 Fragment 在配置变化时不会再次调用 onCreate()。有保存的状态说明进程曾被终止，
+        // 导入已经中断，重新开始会重复插入已经提交的笔记
+        if (savedInstanceState != null) {
+            getFragmentManager().beginTransaction().remove(this).commit();
+            return;
+        }
+
+        Uri notesUri = getArguments().getParcelable(ARG_NOTES_URI);
+        Uri source = getArguments().getParcelable(ARG_SOURCE_URI);
+        mTask = new ImportNotesTask(this, new NoteImporter(mContext.getContentResolver(),
+                notesUri, this));
+        mTask.execute(source);
+    }
+
+    /**
+     * 每次附加到一个 Activity 时显示进度对话框，包括配置变化之后新建的 Activity。
+     */
+    @Override
+    public void onAttach(Activity activity) {
+        super.onAttach(activity);
+        mDialog = new ProgressDialog(activity);
+        mDialog.setIndeterminate(true);
+        mDialog.setCancelable(false);
+        mDialog.setMessage(activity.getString(R.string.import_progress, mImported));
+        mDialog.show();
+    }
+
+    /**
+     * 在 Activity 销毁之前关闭它的对话框，以免窗口泄漏。
+     */
+    @Override
+    public void onDetach() {
+        super.onDetach();
+        dismissDialog();
+    }
+
+    /**
+     * 用户离开列表等原因导致 Fragment 被销毁时，不再更新界面，导入本身不会被中断，
+     * 结束时仍然显示结果。
+     */
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (mTask != null) {
+            mTask.detach();
+        }
+    }
+
+    @Override
+    public void onProgress(int imported) {
+        mTask.publish(imported);
+    }
+
+    /**
+     * 在主线程上报告导入进度。
+     */
+    void onProgressUpdate(int imported) {
+        mImported = imported;
+        if (mDialog != null) {
+            mDialog.setMessage(mContext.getString(R.string.import_progress, imported));
+        }
+    }
+
+    /**
+     * 在主线程上导入结束后调用，关闭对话框并移除此 Fragment。
+     */
+    void onImportFinished() {
+        dismissDialog();
+
+        // 结果可能在 Activity 保存状态之后到达，此时移除 Fragment 不需要恢复
+        FragmentManager fm = getFragmentManager();
+        if (fm != null) {
+            fm.beginTransaction().remove(this).commitAllowingStateLoss();
+        }
+    }
+
+    private void dismissDialog() {
+        if (mDialog != null) {
+            if (mDialog.isShowing()) {
+                mDialog.dismiss();
+            }
+            mDialog = null;
+        }
+    }
+
+    /**
+     * 执行导入的任务。只持有 Fragment 和应用 Context，不持有 Activity。
+     */
+    private static class ImportNotesTask extends AsyncTask<Uri, Integer, Integer> {
+        private final Context mContext;
+        private final NoteImporter mImporter;
+        private NoteImportFragment mFragment;
+
+        ImportNotesTask(NoteImportFragment fragment, NoteImporter importer) {
+            mFragment = fragment;
+            mContext = fragment.mContext;
+            mImporter = importer;
+        }
+
+        /**
+         * 从导入线程上转发进度。
+         */
+        void publish(int imported) {
+            publishProgress(imported);
+        }
+
+        /**
+         * 不再向 Fragment 报告。
+         */
+        void detach() {
+            mFragment = null;
+        }
+
+        @Override
+        protected Integer doInBackground(Uri... params) {
+            InputStream in = null;
+            try {
+                in = mContext.getContentResolver().openInputStream(params[0]);
+                mImporter.importFrom(in);
+                return RESULT_DONE;
+            } catch (NoteImporter.FormatException e) {
+                Log.e(TAG, "Invalid import file " + params[0], e);
+                return RESULT_FORMAT_ERROR;
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to import notes from " + params[0], e);
+                return RESULT_READ_ERROR;
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... values) {
+            if (mFragment != null) {
+                mFragment.onProgressUpdate(values[0]);
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Integer result) {
+            int message;
+            switch (result) {
+                case RESULT_DONE:
+                    message = R.string.import_done;
+                    break;
+                case RESULT_FORMAT_ERROR:
+                    message = R.string.import_format_error;
+                    break;
+                default:
+                    message = R.string.import_failed;
+                    break;
+            }
+            Toast.makeText(mContext, mContext.getString(message, mImporter.getImportedCount()),
+                    Toast.LENGTH_LONG).show();
+
+            if (mFragment != null) {
+                mFragment.onImportFinished();
+            }
+        }
+    }
+}
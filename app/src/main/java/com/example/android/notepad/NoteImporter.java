@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+import android.util.MalformedJsonException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 以流的方式导入笔记。支持导出产生的两种格式：NDJSON（{@link NotePad.Notes#EXPORT_NDJSON_TYPE}）
+ * 和每个笔记一个文本文件的 zip 归档（{@link NotePad.Notes#EXPORT_ZIP_TYPE}），格式由文件头自动识别。
+ * 解析出的笔记攒成批次，通过 {@link ContentResolver#bulkInsert(Uri, ContentValues[])} 在一个事务中插入，
+ * 因此任何时候内存中最多只有一个批次的笔记。此类不是线程安全的，应在后台线程上使用。
+ */
+final class NoteImporter {
+
+    // 用于日志记录和调试
+    private static final String TAG = "NoteImporter";
+
+    /**
+     * 每个批次最多包含的笔记数量
+     */
+    static final int BATCH_SIZE = 500;
+
+    /**
+     * 每个批次最多包含的内容字符数。包含很长笔记的批次会提前提交，以限制内存占用。
+     */
+    private static final int MAX_BATCH_CHARS = 4 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // zip 本地文件头的签名 "PK\3\4"
+    private static final byte[] ZIP_SIGNATURE = { 'P', 'K', 3, 4 };
+
+    /**
+     * 接收导入进度的回调。在执行导入的线程上调用，每提交一个批次调用一次。
+     */
+    interface ProgressListener {
+        void onProgress(int imported);
+    }
+
+    /**
+     * 接收导入批次的目标。每次调用在一个事务中插入整个批次。
+     */
+    interface BatchSink {
+        /**
+         * @return 插入的行数。
+         */
+        int bulkInsert(Uri uri, ContentValues[] values);
+    }
+
+    /**
+     * 文件内容不符合导入格式时抛出，与读取文件本身的失败区分开。
+     */
+    static class FormatException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        FormatException(String message, Throwable cause) {
+            super(message);
+            initCause(cause);
+        }
+    }
+
+    private final BatchSink mSink;
+    private final Uri mNotesUri;
+    private final ProgressListener mListener;
+
+    private final ArrayList<ContentValues> mBatch = new ArrayList<ContentValues>(BATCH_SIZE);
+    private int mBatchChars;
+    private int mImported;
+
+    /**
+     * @param notesUri 要插入笔记的目录 URI
+     * @param listener 进度回调，可以为 null
+     */
+    NoteImporter(final ContentResolver resolver, Uri notesUri, ProgressListener listener) {
+        this(new BatchSink() {
+            @Override
+            public int bulkInsert(Uri uri, ContentValues[] values) {
+                return resolver.bulkInsert(uri, values);
+            }
+        }, notesUri, listener);
+    }
+
+    /**
+     * @param sink 插入批次的目标
+     * @param notesUri 要插入笔记的目录 URI
+     * @param listener 进度回调，可以为 null
+     */
+    NoteImporter(BatchSink sink, Uri notesUri, ProgressListener listener) {
+        mSink = sink;
+        mNotesUri = notesUri;
+        mListener = listener;
+    }
+
+    /**
+     * 从输入流导入所有笔记。调用者负责关闭输入流。
+     * 如果中途失败，已经提交的批次会保留，{@link #getImportedCount()} 返回已导入的数量。
+     *
+     * @return 导入的笔记数量。
+     * @throws FormatException 如果文件格式不正确。
+     * @throws IOException 如果读取失败。
+     */
+    int importFrom(InputStream in) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        if (startsWithZipSignature(buffered)) {
+            importZip(new ZipInputStream(buffered));
+        } else {
+            importNdjson(new InputStreamReader(buffered, "UTF-8"));
+        }
+        flush();
+
+        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+        Log.i(TAG, "Imported " + mImported + " notes in " + elapsed + "ms ("
+                + (mImported * 1000L / elapsed) + " notes/s)");
+        return mImported;
+    }
+
+    /**
+     * @return 已经提交到提供者的笔记数量。
+     */
+    int getImportedCount() {
+        return mImported;
+    }
+
+    private static boolean startsWithZipSignature(BufferedInputStream in) throws IOException {
+        in.mark(ZIP_SIGNATURE.length);
+        try {
+            for (byte b : ZIP_SIGNATURE) {
+                if (in.read() != b) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * 导入 NDJSON。宽松模式的 JsonReader 允许流中有多个顶层值，因此可以逐个读取每行的对象。
+     * 未知的字段被忽略；_id 不被导入，笔记总是作为新笔记插入。
+     */
+    private void importNdjson(Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        reader.setLenient(true);
+        while (true) {
+            ContentValues values;
+            try {
+                if (reader.peek() == JsonToken.END_DOCUMENT) {
+                    break;
+                }
+                values = readNdjsonNote(reader);
+            } catch (MalformedJsonException e) {
+                throw new FormatException("Malformed NDJSON after " + mImported + " notes", e);
+            } catch (IllegalStateException e) {
+                // JsonReader 在遇到不符合预期的记号时抛出，例如一行不是对象
+                throw new FormatException("Unexpected NDJSON token after " + mImported + " notes", e);
+            } catch (NumberFormatException e) {
+                throw new FormatException("Invalid number in NDJSON after " + mImported + " notes", e);
+            }
+            add(values, values.containsKey(NotePad.Notes.COLUMN_NAME_NOTE)
+                    ? values.getAsString(NotePad.Notes.COLUMN_NAME_NOTE).length() : 0);
+        }
+    }
+
+    /**
+     * 读取一行 NDJSON 中的笔记对象。只解析，不访问提供者，
+     * 因此这里抛出的运行时异常都表示文件格式不正确。
+     */
+    private static ContentValues readNdjsonNote(JsonReader reader) throws IOException {
+        ContentValues values = new ContentValues();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+            } else if (NotePad.Notes.COLUMN_NAME_TITLE.equals(name)) {
+                values.put(NotePad.Notes.COLUMN_NAME_TITLE, reader.nextString());
+            } else if (NotePad.Notes.COLUMN_NAME_NOTE.equals(name)) {
+                values.put(NotePad.Notes.COLUMN_NAME_NOTE, reader.nextString());
+            } else if (NotePad.Notes.COLUMN_NAME_CREATE_DATE.equals(name)) {
+                values.put(NotePad.Notes.COLUMN_NAME_CREATE_DATE, reader.nextLong());
+            } else if (NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE.equals(name)) {
+                values.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, reader.nextLong());
+            } else if (NotePad.Notes.COLUMN_NAME_COLOR.equals(name)) {
+                values.put(NotePad.Notes.COLUMN_NAME_COLOR, reader.nextInt());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return values;
+    }
+
+    /**
+     * 导入 zip 归档。每个文件是一个笔记：第一行是标题，空一行之后是内容；条目时间作为修改日期。
+     */
+    private void importZip(ZipInputStream zip) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        StringBuilder text = new StringBuilder();
+
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+
+            // 读到当前条目的末尾。某些平台版本的 InputStreamReader 在读到流末尾后不会再读取，
+            // 所以每个条目使用一个新的 reader；不关闭它，以免关闭整个归档。
+            Reader reader = new InputStreamReader(zip, "UTF-8");
+            text.setLength(0);
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, count);
+            }
+
+            ContentValues values = new ContentValues();
+            int titleEnd = text.indexOf("\n");
+            if (titleEnd < 0) {
+                values.put(NotePad.Notes.COLUMN_NAME_TITLE, text.toString());
+                values.put(NotePad.Notes.COLUMN_NAME_NOTE, "");
+            } else {
+                int bodyStart = titleEnd + 1;
+                if (bodyStart < text.length() && text.charAt(bodyStart) == '\n') {
+                    bodyStart++;
+                }
+                values.put(NotePad.Notes.COLUMN_NAME_TITLE, text.substring(0, titleEnd).trim());
+                values.put(NotePad.Notes.COLUMN_NAME_NOTE, text.substring(bodyStart));
+            }
+            if (entry.getTime() != -1) {
+                values.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, entry.getTime());
+            }
+            add(values, text.length());
+        }
+    }
+
+    /**
+     * 把一条笔记加入当前批次，批次满时提交。用于导入以外的批量插入，最后需要调用 {@link #flush()}。
+     *
+     * @param chars 笔记内容的字符数
+     */
+    void add(ContentValues values, int chars) {
+        mBatch.add(values);
+        mBatchChars += chars;
+        if (mBatch.size() >= BATCH_SIZE || mBatchChars >= MAX_BATCH_CHARS) {
+            flush();
+        }
+    }
+
+    /**
+     * 在一个事务中提交当前批次。
+     */
+    void flush() {
+        if (mBatch.isEmpty()) {
+            return;
+        }
+        ContentValues[] batch = mBatch.toArray(new ContentValues[mBatch.size()]);
+        mImported += mSink.bulkInsert(mNotesUri, batch);
+        mBatch.clear();
+        mBatchChars = 0;
+        if (mListener != null) {
+            mListener.onProgress(mImported);
+        }
+    }
+}
@@ -27,6 +27,80 @@ import android.provider.BaseColumns;
 public final class NotePad {
     public static final String AUTHORITY = "com.google.provider.NotePad";
 
+    /**
+     * 通过 {@link android.content.ContentResolver#call(Uri, String, String, android.os.Bundle)}
+     * 获取提供者中笔记行缓存的统计信息。返回的 Bundle 包含以下 KEY_ROW_CACHE_* 键。
+     */
+    public static final String METHOD_ROW_CACHE_STATS = "row_cache_stats";
+
+    /**
+     * 行缓存的命中次数（long）
+     */
+    public static final String KEY_ROW_CACHE_HITS = "hits";
+
+    /**
+     * 行缓存的未命中次数（long）
+     */
+    public static final String KEY_ROW_CACHE_MISSES = "misses";
+
+    /**
+     * 行缓存中的行数（int）
+     */
+    public static final String KEY_ROW_CACHE_SIZE = "size";
+
+    /**
+     * 行缓存中所有行的估计大小，以字节为单位（long）
+     */
+    public static final String KEY_ROW_CACHE_BYTES = "bytes";
+
+    /**
+     * 通过 {@link android.content.ContentResolver#call(Uri, String, String, android.os.Bundle)}
+     * 获取提供者按 URI 模式和操作统计的性能指标。返回的 Bundle 中每个被调用过的组合对应一个键，
+     * 例如 "notes/#:query"，值是包含以下 KEY_METRIC_* 键的 Bundle。
+     * 参数为 {@link #METRICS_ARG_RESET} 时，返回快照之后清除统计。
+     */
+    public static final String METHOD_PROVIDER_METRICS = "provider_metrics";
+
+    /**
+     * {@link #METHOD_PROVIDER_METRICS} 的参数，表示取得快照之后清除统计
+     */
+    public static final String METRICS_ARG_RESET = "reset";
+
+    /**
+     * 调用次数（long）
+     */
+    public static final String KEY_METRIC_COUNT = "count";
+
+    /**
+     * 所有调用的总耗时，以毫秒为单位（double）
+     */
+    public static final String KEY_METRIC_TOTAL_MILLIS = "total_ms";
+
+    /**
+     * 延迟的中位数，以毫秒为单位（double）
+     */
+    public static final String KEY_METRIC_P50_MILLIS = "p50_ms";
+
+    /**
+     * 延迟的第 90 百分位数，以毫秒为单位（double）
+     */
+    public static final String KEY_METRIC_P90_MILLIS = "p90_ms";
+
+    /**
+     * 延迟的第 99 百分位数，以毫秒为单位（double）
+     */
+    public static final String KEY_METRIC_P99_MILLIS = "p99_ms";
+
+    /**
+     * 查询返回的行数，或插入、更新、删除影响的行数（long）
+     */
+    public static final String KEY_METRIC_ROWS = "rows";
+
+    /**
+     * 通过管道写出的字节数（long）
+     */
+    public static final String KEY_METRIC_BYTES = "bytes";
+
     // 此类无法被实例化
     private NotePad() {
     }
@@ -67,6 +141,11 @@ public final class NotePad {
          */
         private static final String PATH_NOTE_ID = "/notes/";
 
+        /**
+         * 全文搜索 URI 的路径部分
+         */
+        private static final String PATH_SEARCH = "/notes/search";
+
         /**
          * 笔记 ID URI 的路径中相对位置的 0 基索引
          */
@@ -102,6 +181,64 @@ public final class NotePad {
         public static final Uri LIVE_FOLDER_URI
                 = Uri.parse(SCHEME + AUTHORITY + PATH_LIVE_FOLDER);
 
+        /**
+         * 全文搜索的内容 URI。搜索词通过 {@link #SEARCH_QUERY_PARAMETER} 查询参数传入，
+         * 结果按相关度排序（标题命中优先，其次是命中次数，最后是修改日期）。
+         */
+        public static final Uri CONTENT_SEARCH_URI
+                = Uri.parse(SCHEME + AUTHORITY + PATH_SEARCH);
+
+        /**
+         * {@link #CONTENT_SEARCH_URI} 中携带搜索词的查询参数名
+         */
+        public static final String SEARCH_QUERY_PARAMETER = "q";
+
+        /**
+         * 限制返回行数的查询参数名，适用于 {@link #CONTENT_URI} 和 {@link #CONTENT_SEARCH_URI}。
+         */
+        public static final String LIMIT_QUERY_PARAMETER = "limit";
+
+        /**
+         * 跳过前若干行的查询参数名，只能与 {@link #LIMIT_QUERY_PARAMETER} 一起使用。
+         * 跳过的行仍然要逐行遍历，普通的翻页应当使用键集参数；只有在键集起点已经失效时，
+         * 例如列表数据变化之后重新定位远处的页面，才按位置查询。
+         */
+        public static final String OFFSET_QUERY_PARAMETER = "offset";
+
+        /**
+         * 键集分页的查询参数名：只返回修改日期早于此值（毫秒）的笔记。
+         * 与 {@link #BEFORE_ID_QUERY_PARAMETER} 一起使用时，修改日期相同的笔记再按 ID 区分。
+         * 分页查询按 {@link #PAGED_SORT_ORDER} 排序。
+         */
+        public static final String BEFORE_MODIFIED_QUERY_PARAMETER = "before_modified";
+
+        /**
+         * 键集分页的查询参数名：上一页最后一条笔记的 ID。
+         */
+        public static final String BEFORE_ID_QUERY_PARAMETER = "before_id";
+
+        /**
+         * 变化通知 URI 中表示变化类型的查询参数名。提供者对单个笔记的插入、更新和删除发出
+         * 形如 content://.../notes/5?change=update 的通知，观察者可以只处理这一行；
+         * 没有此参数的通知（例如批量操作）表示任意数量的笔记都可能发生了变化。
+         */
+        public static final String CHANGE_QUERY_PARAMETER = "change";
+
+        /**
+         * 变化类型：插入了一条笔记
+         */
+        public static final String CHANGE_INSERT = "insert";
+
+        /**
+         * 变化类型：更新了一条笔记
+         */
+        public static final String CHANGE_UPDATE = "update";
+
+        /**
+         * 变化类型：删除了一条笔记
+         */
+        public static final String CHANGE_DELETE = "delete";
+
         /*
          * MIME 类型定义
          */
@@ -121,6 +258,37 @@ public final class NotePad {
          */
         public static final String DEFAULT_SORT_ORDER = "modified DESC";
 
+        /**
+         * 键集分页使用的排序顺序。ID 作为修改日期相同时的次要排序键，保证顺序是全序的。
+         */
+        public static final String PAGED_SORT_ORDER = "modified DESC, _id DESC";
+
+        /*
+         * 导出定义
+         */
+
+        /**
+         * 导出格式：换行分隔的 JSON，每行一个笔记对象，字段名与列名相同。
+         * 通过 {@link android.content.ContentResolver#openTypedAssetFileDescriptor} 打开 {@link #CONTENT_URI}。
+         */
+        public static final String EXPORT_NDJSON_TYPE = "application/x-ndjson";
+
+        /**
+         * 导出格式：zip 归档，每个笔记一个 UTF-8 文本文件，第一行是标题，空一行之后是内容，
+         * 条目时间是笔记的修改日期。
+         */
+        public static final String EXPORT_ZIP_TYPE = "application/zip";
+
+        /**
+         * 导出选项中的选择条件（String），只导出满足条件的笔记。
+         */
+        public static final String EXPORT_SELECTION_OPTION = "selection";
+
+        /**
+         * 导出选项中选择条件的参数（String[]）。
+         */
+        public static final String EXPORT_SELECTION_ARGS_OPTION = "selectionArgs";
+
         /*
          * 列定义
          */
@@ -148,5 +316,128 @@ public final class NotePad {
          * <P>类型: INTEGER (来自 System.currentTimeMillis() 的 long)</P>
          */
         public static final String COLUMN_NAME_MODIFICATION_DATE = "modified";
+
+        /**
+         * 内容分块数量的列名。为 0 时完整的笔记内容存放在 {@link #COLUMN_NAME_NOTE} 列中；
+         * 大于 0 时内容存放在 {@link NoteChunks} 中，{@link #COLUMN_NAME_NOTE} 列只包含第一个分块。
+         * 此列由提供者维护，客户端写入的值会被忽略。
+         * <P>类型: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_CHUNK_COUNT = "chunk_count";
+
+        /**
+         * 内容预览的列名。提供者在写入内容时生成预览：取内容开头的一段文字，
+         * 连续的空白（包括换行）合并为一个空格。此列由提供者维护，客户端写入的值会被忽略。
+         * <P>类型: TEXT</P>
+         */
+        public static final String COLUMN_NAME_PREVIEW = "preview";
+
+        /**
+         * 笔记背景颜色的列名，ARGB 格式。为 0 时表示用户没有为笔记选择颜色，使用默认颜色。
+         * <P>类型: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_COLOR = "color";
+    }
+
+    /**
+     * 笔记内容分块表契约。超过 {@link #CHUNK_SIZE} 个字符的笔记内容按顺序切分为多个分块存储，
+     * 这样读取或修改很大的笔记时不必把整个内容放进一行游标中。
+     * <p>
+     * 写入笔记的 {@link Notes#COLUMN_NAME_NOTE} 列时，提供者会自动分块。也可以直接读写分块：
+     * 查询 {@link #buildChunksUri(long)} 读取一段连续的分块（用 {@link #START_QUERY_PARAMETER} 和
+     * {@link Notes#LIMIT_QUERY_PARAMETER} 指定范围）；向其插入分块以替换或追加分块；
+     * 更新 {@link #buildChunkUri(long, int)} 以替换单个分块；删除 {@link #buildChunksUri(long)}
+     * 以截断从 {@link #START_QUERY_PARAMETER} 开始的所有分块。
+     * <p>
+     * 更新 {@link #buildChunksUri(long)} 会用 {@link #COLUMN_NAME_TEXT} 中的文本替换从
+     * {@link #START_QUERY_PARAMETER} 开始的 {@link #COUNT_QUERY_PARAMETER} 个分块。文本被重新切分，
+     * 之后的分块随之移动，返回值是替换后这段文本占用的分块数量。编辑很大的笔记时可以只读写其中的一段。
+     */
+    public static final class NoteChunks implements BaseColumns {
+
+        // 此类无法被实例化
+        private NoteChunks() {}
+
+        /**
+         * 本提供者提供的表名
+         */
+        public static final String TABLE_NAME = "note_chunks";
+
+        /**
+         * 分块 URI 中笔记 ID 之后的路径部分
+         */
+        private static final String PATH_CHUNKS = "chunks";
+
+        /**
+         * 单个分块 URI 的路径中分块序号的 0 基索引
+         */
+        public static final int SEQUENCE_PATH_POSITION = 3;
+
+        /**
+         * 分块范围的起始序号（含）的查询参数名。默认为 0。
+         */
+        public static final String START_QUERY_PARAMETER = "start";
+
+        /**
+         * 替换一段分块时，被替换的分块数量的查询参数名。
+         */
+        public static final String COUNT_QUERY_PARAMETER = "count";
+
+        /**
+         * 每个分块的最大字符数。不超过此长度的笔记内容不分块。
+         */
+        public static final int CHUNK_SIZE = 16 * 1024;
+
+        /**
+         * 提供分块目录的 MIME 类型。
+         */
+        public static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd.google.note_chunk";
+
+        /**
+         * 单个分块的 MIME 类型。
+         */
+        public static final String CONTENT_ITEM_TYPE = "vnd.android.cursor.item/vnd.google.note_chunk";
+
+        /**
+         * 此表的默认排序顺序
+         */
+        public static final String DEFAULT_SORT_ORDER = "seq ASC";
+
+        /**
+         * 所属笔记 ID 的列名
+         * <P>类型: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_NOTE_ID = "note_id";
+
+        /**
+         * 分块序号的列名，从 0 开始连续编号
+         * <P>类型: INTEGER</P>
+         */
+        public static final String COLUMN_NAME_SEQUENCE = "seq";
+
+        /**
+         * 分块内容的列名
+         * <P>类型: TEXT</P>
+         */
+        public static final String COLUMN_NAME_TEXT = "text";
+
+        /**
+         * 返回给定笔记的分块目录 URI。
+         */
+        public static Uri buildChunksUri(long noteId) {
+            return Notes.CONTENT_ID_URI_BASE.buildUpon()
+                    .appendPath(Long.toString(noteId))
+                    .appendPath(PATH_CHUNKS)
+                    .build();
+        }
+
+        /**
+         * 返回给定笔记中单个分块的 URI。
+         */
+        public static Uri buildChunkUri(long noteId, int sequence) {
+            return buildChunksUri(noteId).buildUpon()
+                    .appendPath(Integer.toString(sequence))
+                    .build();
+        }
     }
 }
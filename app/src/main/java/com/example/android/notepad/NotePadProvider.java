@@ -20,32 +20,48 @@ import com.example.android.notepad.NotePad;
 
 import android.content.ClipDescription;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
+import android.content.SharedPreferences;
 import android.content.UriMatcher;
 import android.content.ContentProvider.PipeDataWriter;
 import android.content.res.AssetFileDescriptor;
 import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.os.ParcelFileDescriptor;
 import android.provider.LiveFolders;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * 提供对笔记数据库的访问。每个笔记都有一个标题、笔记内容、创建日期和修改日期。
@@ -57,12 +73,50 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
     /**
      * 提供者使用的数据库作为其底层数据存储
      */
-    private static final String DATABASE_NAME = "note_pad.db";
+    static final String DATABASE_NAME = "note_pad.db";
 
     /**
      * 数据库版本
      */
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 8;
+
+    /**
+     * 可以就地升级的最早数据库版本。更早的数据库只能销毁后重建。
+     */
+    private static final int BASE_DATABASE_VERSION = 2;
+
+    /**
+     * 笔记全文索引（FTS4）表的表名。其 docid 与 notes 表的 _id 一致，由触发器保持同步。
+     */
+    private static final String FTS_TABLE_NAME = "notes_fts";
+
+    /**
+     * 笔记列表的覆盖索引，包含列表显示的所有列
+     */
+    private static final String LIST_INDEX_NAME = "notes_list_index";
+
+    /**
+     * 从数据库中读取内容以生成预览时读取的字符数。合并空白之后仍然足够生成完整的预览。
+     */
+    private static final int PREVIEW_SOURCE_LENGTH = 1024;
+
+    /**
+     * 全文搜索的默认排序：标题命中的笔记优先，其次按命中次数，最后按修改日期降序。
+     * offsets() 按列顺序输出命中，因此以 "0 " 开头表示标题（第 0 列）中有命中。
+     */
+    private static final String SEARCH_SORT_ORDER =
+            "(substr(search.hit_offsets, 1, 2) = '0 ') DESC, "
+            + "(length(search.hit_offsets) - length(replace(search.hit_offsets, ' ', ''))) DESC, "
+            + NotePad.Notes.TABLE_NAME + "." + NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE + " DESC";
+
+    /**
+     * 全文搜索使用的表表达式。子查询中的 "?" 绑定到 MATCH 表达式。
+     */
+    private static final String SEARCH_TABLES =
+            NotePad.Notes.TABLE_NAME + " JOIN (SELECT docid, offsets(" + FTS_TABLE_NAME
+            + ") AS hit_offsets FROM " + FTS_TABLE_NAME + " WHERE " + FTS_TABLE_NAME
+            + " MATCH ?) AS search ON " + NotePad.Notes.TABLE_NAME + "." + NotePad.Notes._ID
+            + " = search.docid";
 
     /**
      * 用于从数据库中选择列的投影映射
@@ -74,6 +128,16 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
      */
     private static HashMap<String, String> sLiveFolderProjectionMap;
 
+    /**
+     * 全文搜索使用的投影映射，列名需要用表名限定以避免与搜索子查询的列冲突
+     */
+    private static HashMap<String, String> sSearchProjectionMap;
+
+    /**
+     * 笔记内容分块使用的投影映射
+     */
+    private static HashMap<String, String> sChunksProjectionMap;
+
     /**
      * 标准投影，包含普通笔记的兴趣列。
      */
@@ -81,9 +145,56 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
             NotePad.Notes._ID,               // 投影位置 0，笔记的 ID
             NotePad.Notes.COLUMN_NAME_NOTE,  // 投影位置 1，笔记的内容
             NotePad.Notes.COLUMN_NAME_TITLE, // 投影位置 2，笔记的标题
+            NotePad.Notes.COLUMN_NAME_CHUNK_COUNT, // 投影位置 3，内容的分块数量
     };
+    private static final int READ_NOTE_ID_INDEX = 0;
     private static final int READ_NOTE_NOTE_INDEX = 1;
     private static final int READ_NOTE_TITLE_INDEX = 2;
+    private static final int READ_NOTE_CHUNK_COUNT_INDEX = 3;
+
+    /**
+     * 导出笔记目录时使用的投影。
+     */
+    private static final String[] EXPORT_PROJECTION = new String[] {
+            NotePad.Notes._ID,
+            NotePad.Notes.COLUMN_NAME_TITLE,
+            NotePad.Notes.COLUMN_NAME_NOTE,
+            NotePad.Notes.COLUMN_NAME_CREATE_DATE,
+            NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE,
+            NotePad.Notes.COLUMN_NAME_CHUNK_COUNT,
+            NotePad.Notes.COLUMN_NAME_COLOR,
+    };
+    private static final int EXPORT_ID_INDEX = 0;
+    private static final int EXPORT_TITLE_INDEX = 1;
+    private static final int EXPORT_NOTE_INDEX = 2;
+    private static final int EXPORT_CREATE_DATE_INDEX = 3;
+    private static final int EXPORT_MODIFICATION_DATE_INDEX = 4;
+    private static final int EXPORT_CHUNK_COUNT_INDEX = 5;
+    private static final int EXPORT_COLOR_INDEX = 6;
+
+    /**
+     * 笔记行缓存中的列，即单个笔记 URI 的全部列
+     */
+    private static final String[] ROW_CACHE_COLUMNS = new String[] {
+            NotePad.Notes._ID,
+            NotePad.Notes.COLUMN_NAME_TITLE,
+            NotePad.Notes.COLUMN_NAME_NOTE,
+            NotePad.Notes.COLUMN_NAME_CREATE_DATE,
+            NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE,
+            NotePad.Notes.COLUMN_NAME_CHUNK_COUNT,
+            NotePad.Notes.COLUMN_NAME_PREVIEW,
+            NotePad.Notes.COLUMN_NAME_COLOR
+    };
+
+    /**
+     * 笔记行缓存的大小上限（字节）。分块存储的笔记行只包含第一个分块，所以一行最多约 32KB。
+     */
+    private static final long ROW_CACHE_MAX_BYTES = 512 * 1024;
+
+    /**
+     * 导出时写入管道的缓冲区大小（字符数）
+     */
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
 
     /*
      * Uri 匹配器使用的常量，根据传入的 URI 模式选择操作
@@ -97,14 +208,46 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
     // 传入的 URI 匹配活动文件夹 URI 模式
     private static final int LIVE_FOLDER_NOTES = 3;
 
+    // 传入的 URI 匹配全文搜索 URI 模式
+    private static final int NOTES_SEARCH = 4;
+
+    // 传入的 URI 匹配笔记内容分块目录 URI 模式
+    private static final int NOTE_CHUNKS = 5;
+
+    // 传入的 URI 匹配单个内容分块 URI 模式
+    private static final int NOTE_CHUNK_ID = 6;
+
     /**
      * UriMatcher 实例
      */
     private static final UriMatcher sUriMatcher;
 
+    // 以匹配码为下标的 URI 模式，用作性能指标的名称
+    private static final String[] sUriPatterns = new String[NOTE_CHUNK_ID + 1];
+
     // 新的 DatabaseHelper 的句柄。
     private DatabaseHelper mOpenHelper;
 
+    // 当前线程是否正在执行批量操作。批量操作期间的变化通知会被合并，在事务提交后统一发出一次。
+    private final ThreadLocal<Boolean> mApplyingBatch = new ThreadLocal<Boolean>();
+
+    // 批量操作期间分块发生变化的笔记。它们的分块数量和全文索引在事务提交前统一更新一次。
+    private final ThreadLocal<HashSet<Long>> mPendingChunkSyncs = new ThreadLocal<HashSet<Long>>();
+
+    // 最近读过的单个笔记行。编辑器、标题编辑器和粘贴会反复查询同一个笔记 URI，命中时不再读取数据库。
+    private final NoteRowCache mRowCache = new NoteRowCache(ROW_CACHE_COLUMNS, ROW_CACHE_MAX_BYTES);
+
+    // 缓存行构造的游标在 requery() 时通过它重新读取笔记
+    private final NoteRowCache.RowLoader mRowLoader = new NoteRowCache.RowLoader() {
+        @Override
+        public Object[] loadRow(long id) {
+            return loadNoteRow(id);
+        }
+    };
+
+    // 按 URI 模式和操作统计的性能指标，见 NotePad#METHOD_PROVIDER_METRICS
+    private final ProviderMetrics mMetrics = new ProviderMetrics(sUriPatterns);
+
     /**
      * 一个块，实例化和设置静态对象。
      */
@@ -117,13 +260,20 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
         sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
         // 添加一个模式，将以 "notes" 结束的 URI 路由到 NOTES 操作
-        sUriMatcher.addURI(NotePad.AUTHORITY, "notes", NOTES);
+        addPattern("notes", NOTES);
 
         // 添加一个模式，将以 "notes" 加整数结尾的 URI 路由到笔记 ID 操作
-        sUriMatcher.addURI(NotePad.AUTHORITY, "notes/#", NOTE_ID);
+        addPattern("notes/#", NOTE_ID);
 
         // 添加一个模式，将以 live_folders/notes 结束的 URI 路由到活动文件夹操作
-        sUriMatcher.addURI(NotePad.AUTHORITY, "live_folders/notes", LIVE_FOLDER_NOTES);
+        addPattern("live_folders/notes", LIVE_FOLDER_NOTES);
+
+        // 添加一个模式，将以 "notes/search" 结束的 URI 路由到全文搜索操作
+        addPattern("notes/search", NOTES_SEARCH);
+
+        // 添加模式，将笔记内容分块的 URI 路由到分块操作
+        addPattern("notes/#/chunks", NOTE_CHUNKS);
+        addPattern("notes/#/chunks/#", NOTE_CHUNK_ID);
 
         /*
          * 创建并初始化返回所有列的投影映射
@@ -150,6 +300,18 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
                 NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE,
                 NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE);
 
+        // 将 "chunk_count" 映射到 "chunk_count"
+        sNotesProjectionMap.put(NotePad.Notes.COLUMN_NAME_CHUNK_COUNT,
+                NotePad.Notes.COLUMN_NAME_CHUNK_COUNT);
+
+        // 将 "preview" 映射到 "preview"
+        sNotesProjectionMap.put(NotePad.Notes.COLUMN_NAME_PREVIEW,
+                NotePad.Notes.COLUMN_NAME_PREVIEW);
+
+        // 将 "color" 映射到 "color"
+        sNotesProjectionMap.put(NotePad.Notes.COLUMN_NAME_COLOR,
+                NotePad.Notes.COLUMN_NAME_COLOR);
+
         /*
          * 创建并初始化处理活动文件夹的投影映射
          */
@@ -163,23 +325,123 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
         // 将 "NAME" 映射到 "title AS NAME"
         sLiveFolderProjectionMap.put(LiveFolders.NAME, NotePad.Notes.COLUMN_NAME_TITLE + " AS " +
                 LiveFolders.NAME);
+
+        /*
+         * 创建并初始化全文搜索的投影映射，将每一列限定到 notes 表
+         */
+        sSearchProjectionMap = new HashMap<String, String>();
+        for (String column : sNotesProjectionMap.keySet()) {
+            sSearchProjectionMap.put(column,
+                    NotePad.Notes.TABLE_NAME + "." + column + " AS " + column);
+        }
+
+        /*
+         * 创建并初始化内容分块的投影映射
+         */
+        sChunksProjectionMap = new HashMap<String, String>();
+        sChunksProjectionMap.put(NotePad.NoteChunks._ID, NotePad.NoteChunks._ID);
+        sChunksProjectionMap.put(NotePad.NoteChunks.COLUMN_NAME_NOTE_ID,
+                NotePad.NoteChunks.COLUMN_NAME_NOTE_ID);
+        sChunksProjectionMap.put(NotePad.NoteChunks.COLUMN_NAME_SEQUENCE,
+                NotePad.NoteChunks.COLUMN_NAME_SEQUENCE);
+        sChunksProjectionMap.put(NotePad.NoteChunks.COLUMN_NAME_TEXT,
+                NotePad.NoteChunks.COLUMN_NAME_TEXT);
+    }
+
+    /**
+     * 向 URI 匹配器添加一个模式，并记录模式的名称。
+     */
+    private static void addPattern(String path, int code) {
+        sUriMatcher.addURI(NotePad.AUTHORITY, path, code);
+        sUriPatterns[code] = path;
     }
 
     /**
      *
      * 此类帮助打开、创建和升级数据库文件。为测试目的设置为包可见性。
+     * 日志模式和检查点策略来自 res/values/config.xml。
      */
     static class DatabaseHelper extends SQLiteOpenHelper {
 
+        // 旧版本把所有笔记共用的背景颜色保存在这个 SharedPreferences 中
+        private static final String LEGACY_PREFERENCES_NAME = "MyNotesApp";
+        private static final String LEGACY_COLOR_KEY = "backgroundColor";
+
+        private final Context mContext;
+
+        // 是否使用预写日志（WAL）
+        private final boolean mWriteAheadLogging;
+
+        // WAL 自动检查点的页数阈值，0 表示禁用自动检查点
+        private final int mAutoCheckpointPages;
+
+        // 批量写入至少包含多少个操作时在结束后立即执行检查点，0 表示从不执行
+        private final int mCheckpointBatchOperations;
+
         DatabaseHelper(Context context) {
 
             // 调用超类构造函数，请求默认的游标工厂。
             super(context, DATABASE_NAME, null, DATABASE_VERSION);
+            mContext = context;
+
+            Resources res = context.getResources();
+            mWriteAheadLogging = res.getBoolean(R.bool.config_databaseWriteAheadLogging);
+            mAutoCheckpointPages = res.getInteger(R.integer.config_databaseWalAutoCheckpointPages);
+            mCheckpointBatchOperations =
+                    res.getInteger(R.integer.config_databaseCheckpointBatchOperations);
+
+            // 在 WAL 模式下，SQLiteDatabase 使用连接池，读操作可以与写操作并发进行
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                setWriteAheadLoggingEnabled(mWriteAheadLogging);
+            }
+        }
+
+        /**
+         * 数据库打开后应用日志模式和自动检查点策略。
+         */
+        @Override
+        public void onOpen(SQLiteDatabase db) {
+            super.onOpen(db);
+
+            if (!mWriteAheadLogging) {
+                return;
+            }
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly()) {
+                db.enableWriteAheadLogging();
+            }
+            pragma(db, "wal_autocheckpoint=" + mAutoCheckpointPages);
+        }
+
+        /**
+         * 如果批量写入足够大，在它结束后执行一次被动检查点，将 WAL 中的页面写回数据库文件。
+         * 被动检查点不会等待正在进行的读操作。只包含少数几个操作的批次不执行检查点，
+         * 它们写入的页面由自动检查点处理。
+         *
+         * @param operations 批量写入包含的操作数
+         */
+        void checkpointAfterBatch(SQLiteDatabase db, int operations) {
+            if (mWriteAheadLogging && mCheckpointBatchOperations > 0
+                    && operations >= mCheckpointBatchOperations) {
+                pragma(db, "wal_checkpoint");
+            }
+        }
+
+        /**
+         * 执行一个会返回结果行的 PRAGMA。这类语句不能通过 execSQL() 执行。
+         */
+        private static void pragma(SQLiteDatabase db, String pragma) {
+            Cursor c = db.rawQuery("PRAGMA " + pragma, null);
+            try {
+                c.moveToFirst();
+            } finally {
+                c.close();
+            }
         }
 
         /**
          *
          * 创建底层数据库，其表名和列名来源于 NotePad 类。
+         * 先创建基础版本的表，再依次执行所有迁移步骤，使新建的数据库与升级得到的数据库结构完全一致。
          */
         @Override
         public void onCreate(SQLiteDatabase db) {
@@ -190,22 +452,245 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
                     + NotePad.Notes.COLUMN_NAME_CREATE_DATE + " INTEGER,"
                     + NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE + " INTEGER"
                     + ");");
+
+            migrate(db, BASE_DATABASE_VERSION, DATABASE_VERSION);
+        }
+
+        /**
+         * 依次执行从 fromVersion（不含）到 toVersion（含）的每一个迁移步骤。
+         * SQLiteOpenHelper 在一个事务中调用 onCreate() 和 onUpgrade()，因此任何一步失败都会回滚整个升级。
+         */
+        private void migrate(SQLiteDatabase db, int fromVersion, int toVersion) {
+            for (int version = fromVersion + 1; version <= toVersion; version++) {
+                switch (version) {
+                    case 3:
+                        upgradeToVersion3(db);
+                        break;
+                    case 4:
+                        upgradeToVersion4(db);
+                        break;
+                    case 5:
+                        upgradeToVersion5(db);
+                        break;
+                    case 6:
+                        upgradeToVersion6(db);
+                        break;
+                    case 7:
+                        upgradeToVersion7(db);
+                        break;
+                    case 8:
+                        upgradeToVersion8(db);
+                        break;
+                    default:
+                        throw new IllegalStateException("No migration to database version " + version);
+                }
+            }
+        }
+
+        /**
+         * 版本 3：添加全文索引，并为已有的笔记建立索引。
+         */
+        private void upgradeToVersion3(SQLiteDatabase db) {
+            createFullTextIndex(db);
+            db.execSQL("INSERT INTO " + FTS_TABLE_NAME + " (docid, "
+                    + NotePad.Notes.COLUMN_NAME_TITLE + ", " + NotePad.Notes.COLUMN_NAME_NOTE
+                    + ") SELECT " + NotePad.Notes._ID + ", " + NotePad.Notes.COLUMN_NAME_TITLE
+                    + ", " + NotePad.Notes.COLUMN_NAME_NOTE + " FROM " + NotePad.Notes.TABLE_NAME);
+        }
+
+        /**
+         * 版本 4：为修改日期、创建日期和标题添加索引。默认的列表查询按修改日期降序排序，
+         * 有了索引之后 SQLite 可以倒序遍历索引，而不必对整个表排序。
+         */
+        private void upgradeToVersion4(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX notes_modified_index ON " + NotePad.Notes.TABLE_NAME
+                    + " (" + NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE + ");");
+            db.execSQL("CREATE INDEX notes_created_index ON " + NotePad.Notes.TABLE_NAME
+                    + " (" + NotePad.Notes.COLUMN_NAME_CREATE_DATE + ");");
+            db.execSQL("CREATE INDEX notes_title_index ON " + NotePad.Notes.TABLE_NAME
+                    + " (" + NotePad.Notes.COLUMN_NAME_TITLE + ");");
+        }
+
+        /**
+         * 版本 5：添加内容分块表，并把已有的超长笔记切分为分块。
+         * 切分在 SQL 中完成，因为超过 CursorWindow 容量的内容无法读进游标。
+         */
+        private void upgradeToVersion5(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE " + NotePad.Notes.TABLE_NAME + " ADD COLUMN "
+                    + NotePad.Notes.COLUMN_NAME_CHUNK_COUNT + " INTEGER NOT NULL DEFAULT 0;");
+            db.execSQL("CREATE TABLE " + NotePad.NoteChunks.TABLE_NAME + " ("
+                    + NotePad.NoteChunks._ID + " INTEGER PRIMARY KEY,"
+                    + NotePad.NoteChunks.COLUMN_NAME_NOTE_ID + " INTEGER NOT NULL,"
+                    + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + " INTEGER NOT NULL,"
+                    + NotePad.NoteChunks.COLUMN_NAME_TEXT + " TEXT NOT NULL,"
+                    + "UNIQUE (" + NotePad.NoteChunks.COLUMN_NAME_NOTE_ID + ", "
+                    + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + ")"
+                    + ");");
+            db.execSQL("CREATE TRIGGER notes_chunks_delete AFTER DELETE ON "
+                    + NotePad.Notes.TABLE_NAME + " BEGIN "
+                    + "DELETE FROM " + NotePad.NoteChunks.TABLE_NAME + " WHERE "
+                    + NotePad.NoteChunks.COLUMN_NAME_NOTE_ID + " = old." + NotePad.Notes._ID
+                    + "; END;");
+
+            int chunkSize = NotePad.NoteChunks.CHUNK_SIZE;
+            Cursor c = db.rawQuery("SELECT " + NotePad.Notes._ID + ", length("
+                    + NotePad.Notes.COLUMN_NAME_NOTE + ") FROM " + NotePad.Notes.TABLE_NAME
+                    + " WHERE length(" + NotePad.Notes.COLUMN_NAME_NOTE + ") > " + chunkSize, null);
+            try {
+                while (c.moveToNext()) {
+                    long noteId = c.getLong(0);
+                    int chunks = (c.getInt(1) + chunkSize - 1) / chunkSize;
+                    for (int seq = 0; seq < chunks; seq++) {
+                        db.execSQL("INSERT INTO " + NotePad.NoteChunks.TABLE_NAME + " ("
+                                + NotePad.NoteChunks.COLUMN_NAME_NOTE_ID + ", "
+                                + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + ", "
+                                + NotePad.NoteChunks.COLUMN_NAME_TEXT + ") SELECT "
+                                + NotePad.Notes._ID + ", " + seq + ", substr("
+                                + NotePad.Notes.COLUMN_NAME_NOTE + ", " + (seq * chunkSize + 1)
+                                + ", " + chunkSize + ") FROM " + NotePad.Notes.TABLE_NAME
+                                + " WHERE " + NotePad.Notes._ID + " = " + noteId);
+                    }
+                    syncChunkedNote(db, noteId);
+                }
+            } finally {
+                c.close();
+            }
+        }
+
+        /**
+         * 版本 6：用笔记列表的覆盖索引取代修改日期索引。列表只读取 ID、标题和修改日期，
+         * 这些列都在索引中，按 {@link NotePad.Notes#PAGED_SORT_ORDER} 倒序遍历索引即可得到一页，
+         * 不会读取包含笔记内容的表页面，因此滚动的开销与笔记内容的大小无关。
+         */
+        private void upgradeToVersion6(SQLiteDatabase db) {
+            db.execSQL("DROP INDEX IF EXISTS notes_modified_index;");
+            db.execSQL("CREATE INDEX " + LIST_INDEX_NAME + " ON " + NotePad.Notes.TABLE_NAME + " ("
+                    + NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE + ", "
+                    + NotePad.Notes._ID + ", "
+                    + NotePad.Notes.COLUMN_NAME_TITLE + ");");
+        }
+
+        /**
+         * 版本 7：添加内容预览列，为已有的笔记生成预览，并把预览加入列表的覆盖索引，
+         * 这样列表显示预览时仍然不需要读取笔记内容。
+         */
+        private void upgradeToVersion7(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE " + NotePad.Notes.TABLE_NAME + " ADD COLUMN "
+                    + NotePad.Notes.COLUMN_NAME_PREVIEW + " TEXT NOT NULL DEFAULT '';");
+
+            // 只读取内容的开头，超长的笔记也不会超出游标窗口
+            Cursor c = db.rawQuery("SELECT " + NotePad.Notes._ID + ", substr("
+                    + NotePad.Notes.COLUMN_NAME_NOTE + ", 1, " + PREVIEW_SOURCE_LENGTH + ") FROM "
+                    + NotePad.Notes.TABLE_NAME, null);
+            try {
+                ContentValues values = new ContentValues();
+                while (c.moveToNext()) {
+                    values.put(NotePad.Notes.COLUMN_NAME_PREVIEW,
+                            NoteText.buildPreview(c.getString(1)));
+                    db.update(NotePad.Notes.TABLE_NAME, values,
+                            NotePad.Notes._ID + " = " + c.getLong(0), null);
+                }
+            } finally {
+                c.close();
+            }
+
+            db.execSQL("DROP INDEX IF EXISTS " + LIST_INDEX_NAME + ";");
+            db.execSQL("CREATE INDEX " + LIST_INDEX_NAME + " ON " + NotePad.Notes.TABLE_NAME + " ("
+                    + NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE + ", "
+                    + NotePad.Notes._ID + ", "
+                    + NotePad.Notes.COLUMN_NAME_TITLE + ", "
+                    + NotePad.Notes.COLUMN_NAME_PREVIEW + ");");
+        }
+
+        /**
+         * 版本 8：添加每个笔记的背景颜色列，并把颜色加入列表的覆盖索引。
+         * 旧版本中所有笔记共用 SharedPreferences 中的一个颜色，这个颜色被迁移到每一条已有的笔记上，
+         * 之后不再使用 SharedPreferences。
+         */
+        private void upgradeToVersion8(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE " + NotePad.Notes.TABLE_NAME + " ADD COLUMN "
+                    + NotePad.Notes.COLUMN_NAME_COLOR + " INTEGER NOT NULL DEFAULT 0;");
+
+            SharedPreferences preferences = mContext.getSharedPreferences(
+                    LEGACY_PREFERENCES_NAME, Context.MODE_PRIVATE);
+            if (preferences.contains(LEGACY_COLOR_KEY)) {
+                db.execSQL("UPDATE " + NotePad.Notes.TABLE_NAME + " SET "
+                        + NotePad.Notes.COLUMN_NAME_COLOR + " = "
+                        + preferences.getInt(LEGACY_COLOR_KEY, 0));
+                preferences.edit().remove(LEGACY_COLOR_KEY).apply();
+            }
+
+            db.execSQL("DROP INDEX IF EXISTS " + LIST_INDEX_NAME + ";");
+            db.execSQL("CREATE INDEX " + LIST_INDEX_NAME + " ON " + NotePad.Notes.TABLE_NAME + " ("
+                    + NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE + ", "
+                    + NotePad.Notes._ID + ", "
+                    + NotePad.Notes.COLUMN_NAME_TITLE + ", "
+                    + NotePad.Notes.COLUMN_NAME_PREVIEW + ", "
+                    + NotePad.Notes.COLUMN_NAME_COLOR + ");");
+        }
+
+        /**
+         * 创建全文索引表以及使其与 notes 表保持同步的触发器。
+         * 只有标题或内容发生变化时才重新索引，仅修改时间戳的更新不会触及索引。
+         */
+        static void createFullTextIndex(SQLiteDatabase db) {
+            String columns = NotePad.Notes.COLUMN_NAME_TITLE + ", " + NotePad.Notes.COLUMN_NAME_NOTE;
+
+            // 优先使用 ICU 分词器，以便中文文本也能按词切分；不支持时退回到默认的 simple 分词器。
+            try {
+                db.execSQL("CREATE VIRTUAL TABLE " + FTS_TABLE_NAME + " USING fts4("
+                        + columns + ", tokenize=icu);");
+            } catch (SQLException e) {
+                Log.w(TAG, "ICU tokenizer unavailable, falling back to simple tokenizer", e);
+                db.execSQL("CREATE VIRTUAL TABLE " + FTS_TABLE_NAME + " USING fts4("
+                        + columns + ");");
+            }
+
+            db.execSQL("CREATE TRIGGER notes_fts_insert AFTER INSERT ON "
+                    + NotePad.Notes.TABLE_NAME + " BEGIN "
+                    + "INSERT INTO " + FTS_TABLE_NAME + " (docid, "
+                    + NotePad.Notes.COLUMN_NAME_TITLE + ", " + NotePad.Notes.COLUMN_NAME_NOTE
+                    + ") VALUES (new." + NotePad.Notes._ID + ", new."
+                    + NotePad.Notes.COLUMN_NAME_TITLE + ", new." + NotePad.Notes.COLUMN_NAME_NOTE
+                    + "); END;");
+
+            db.execSQL("CREATE TRIGGER notes_fts_update AFTER UPDATE OF "
+                    + NotePad.Notes.COLUMN_NAME_TITLE + ", " + NotePad.Notes.COLUMN_NAME_NOTE
+                    + " ON " + NotePad.Notes.TABLE_NAME + " BEGIN "
+                    + "UPDATE " + FTS_TABLE_NAME + " SET "
+                    + NotePad.Notes.COLUMN_NAME_TITLE + " = new." + NotePad.Notes.COLUMN_NAME_TITLE
+                    + ", " + NotePad.Notes.COLUMN_NAME_NOTE + " = new." + NotePad.Notes.COLUMN_NAME_NOTE
+                    + " WHERE docid = old." + NotePad.Notes._ID + "; END;");
+
+            db.execSQL("CREATE TRIGGER notes_fts_delete AFTER DELETE ON "
+                    + NotePad.Notes.TABLE_NAME + " BEGIN "
+                    + "DELETE FROM " + FTS_TABLE_NAME + " WHERE docid = old." + NotePad.Notes._ID
+                    + "; END;");
         }
 
         /**
          *
-         * 演示提供者必须考虑在底层数据存储更改时发生的情况。
-         * 在这个示例中，通过销毁现有数据来升级数据库。
-         * 真实的应用程序应该就地升级数据库。
+         * 就地升级数据库，保留已有的笔记。只有早于 {@link #BASE_DATABASE_VERSION} 的数据库
+         * 才会被销毁并重建。
          */
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
 
+            if (oldVersion >= BASE_DATABASE_VERSION) {
+                // 记录数据库正在升级的日志
+                Log.i(TAG, "Upgrading database from version " + oldVersion + " to "
+                        + newVersion + " in place");
+                migrate(db, oldVersion, newVersion);
+                return;
+            }
+
             // 记录数据库正在升级的日志
             Log.w(TAG, "Upgrading database from version " + oldVersion + " to "
                     + newVersion + ", which will destroy all old data");
 
-            // 删除表及现有数据
+            // 删除表及现有数据（触发器随 notes 表一起删除）
+            db.execSQL("DROP TABLE IF EXISTS " + FTS_TABLE_NAME);
+            db.execSQL("DROP TABLE IF EXISTS " + NotePad.NoteChunks.TABLE_NAME);
             db.execSQL("DROP TABLE IF EXISTS notes");
 
             // 使用新版本重新创建数据库
@@ -240,17 +725,73 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    /**
+     * 与 {@link #query(Uri, String[], String, String[], String)} 相同，但允许调用者通过
+     * {@link CancellationSignal} 取消仍在执行的查询，例如被更新的搜索输入取代的搜索。
+     *
+     * @throws android.os.OperationCanceledException 如果查询在执行期间被取消。
+     */
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder, CancellationSignal cancellationSignal) {
+        long start = System.nanoTime();
+        int uriMatch = sUriMatcher.match(uri);
+        long rows = 0;
+        try {
+            Cursor c = query(uri, uriMatch, projection, selection, selectionArgs, sortOrder,
+                    cancellationSignal);
+
+            // getCount() 执行查询并填充第一个游标窗口。游标跨进程返回时 binder 也会立即调用它，
+            // 进程内的调用者（CursorLoader）也在后台线程中调用，因此这里只是把这部分耗时计入查询。
+            rows = c.getCount();
+            return c;
+        } finally {
+            mMetrics.record(uriMatch, ProviderMetrics.OP_QUERY, start, rows);
+        }
+    }
+
+    /**
+     * 按已经匹配的 URI 模式执行查询。
+     */
+    private Cursor query(Uri uri, int uriMatch, String[] projection, String selection,
+                         String[] selectionArgs, String sortOrder,
+                         CancellationSignal cancellationSignal) {
+        // 没有附加条件的单个笔记查询可以由行缓存提供
+        if (uriMatch == NOTE_ID && TextUtils.isEmpty(selection)) {
+            Cursor cached = queryCachedNote(uri, projection);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
         // 构造一个新的查询构建器并设置其表名
         SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
         qb.setTables(NotePad.Notes.TABLE_NAME);
 
+        // 未指定排序顺序时使用的默认值
+        String defaultOrderBy = NotePad.Notes.DEFAULT_SORT_ORDER;
+
+        // 游标要监视的 URI
+        Uri notificationUri = uri;
+
+        // 返回的最大行数，null 表示不限制
+        String limit = parseLimit(uri);
+
         /**
          * 根据 URI 模式匹配选择投影和调整 "where" 子句。
          */
-        switch (sUriMatcher.match(uri)) {
+        switch (uriMatch) {
             // 如果传入的 URI 是针对笔记，则选择笔记投影
             case NOTES:
                 qb.setProjectionMap(sNotesProjectionMap);
+
+                // 如果指定了键集分页参数，则只返回排在上一页最后一条笔记之后的笔记
+                if (appendKeysetWhere(qb, uri)) {
+                    defaultOrderBy = NotePad.Notes.PAGED_SORT_ORDER;
+                }
                 break;
 
             /* 如果传入的 URI 是由其 ID 标识的单个笔记，则选择笔记 ID 投影，并附加 "_ID = <noteID>"
@@ -270,6 +811,52 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
                 qb.setProjectionMap(sLiveFolderProjectionMap);
                 break;
 
+            case NOTES_SEARCH:
+                // 将搜索词转换为 MATCH 表达式。如果没有可搜索的词，则退化为普通的笔记查询。
+                String match = NoteText.buildMatchExpression(
+                        uri.getQueryParameter(NotePad.Notes.SEARCH_QUERY_PARAMETER));
+                if (match == null) {
+                    qb.setProjectionMap(sNotesProjectionMap);
+                } else {
+                    qb.setTables(SEARCH_TABLES);
+                    qb.setProjectionMap(sSearchProjectionMap);
+                    defaultOrderBy = SEARCH_SORT_ORDER;
+
+                    // 表表达式中的 "?" 位于 where 子句之前，因此 MATCH 参数放在最前面
+                    selectionArgs = prependArgument(match, selectionArgs);
+                }
+
+                // 任何笔记的变化都可能影响搜索结果
+                notificationUri = NotePad.Notes.CONTENT_URI;
+                break;
+
+            case NOTE_CHUNKS:
+                // 返回给定笔记从起始序号开始的一段连续分块
+                qb.setTables(NotePad.NoteChunks.TABLE_NAME);
+                qb.setProjectionMap(sChunksProjectionMap);
+                qb.appendWhere(NotePad.NoteChunks.COLUMN_NAME_NOTE_ID + " = "
+                        + uri.getPathSegments().get(NotePad.Notes.NOTE_ID_PATH_POSITION)
+                        + " AND " + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + " >= "
+                        + parseChunkStart(uri));
+                defaultOrderBy = NotePad.NoteChunks.DEFAULT_SORT_ORDER;
+
+                // 分块的变化以所属笔记的更新通知
+                notificationUri = ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE,
+                        Long.parseLong(uri.getPathSegments().get(NotePad.Notes.NOTE_ID_PATH_POSITION)));
+                break;
+
+            case NOTE_CHUNK_ID:
+                qb.setTables(NotePad.NoteChunks.TABLE_NAME);
+                qb.setProjectionMap(sChunksProjectionMap);
+                qb.appendWhere(NotePad.NoteChunks.COLUMN_NAME_NOTE_ID + " = "
+                        + uri.getPathSegments().get(NotePad.Notes.NOTE_ID_PATH_POSITION)
+                        + " AND " + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + " = "
+                        + uri.getPathSegments().get(NotePad.NoteChunks.SEQUENCE_PATH_POSITION));
+                defaultOrderBy = NotePad.NoteChunks.DEFAULT_SORT_ORDER;
+                notificationUri = ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE,
+                        Long.parseLong(uri.getPathSegments().get(NotePad.Notes.NOTE_ID_PATH_POSITION)));
+                break;
+
             default:
                 // 如果 URI 不匹配任何已知模式，则抛出异常。
                 throw new IllegalArgumentException("Unknown URI " + uri);
@@ -278,7 +865,7 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
         String orderBy;
         // 如果未指定排序顺序，则使用默认值
         if (TextUtils.isEmpty(sortOrder)) {
-            orderBy = NotePad.Notes.DEFAULT_SORT_ORDER;
+            orderBy = defaultOrderBy;
         } else {
             // 否则，使用传入的排序顺序
             orderBy = sortOrder;
@@ -291,21 +878,195 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
          * 执行查询。如果在尝试读取数据库时没有问题，则返回 Cursor 对象；否则，游标变量包含 null。
          * 如果未选择任何记录，则游标对象为空，Cursor.getCount() 返回 0。
          */
-        Cursor c = qb.query(
-                db,            // 要查询的数据库
-                projection,    // 要从查询中返回的列
-                selection,     // where 子句的列
-                selectionArgs, // where 子句的值
-                null,          // 不对行进行分组
-                null,          // 不按行组过滤
-                orderBy        // 排序顺序
-        );
+        Cursor c;
+        if (cancellationSignal != null) {
+            c = qb.query(
+                    db,                // 要查询的数据库
+                    projection,        // 要从查询中返回的列
+                    selection,         // where 子句的列
+                    selectionArgs,     // where 子句的值
+                    null,              // 不对行进行分组
+                    null,              // 不按行组过滤
+                    orderBy,           // 排序顺序
+                    limit,             // 最大行数
+                    cancellationSignal // 用于取消查询的信号
+            );
+        } else {
+            c = qb.query(
+                    db,            // 要查询的数据库
+                    projection,    // 要从查询中返回的列
+                    selection,     // where 子句的列
+                    selectionArgs, // where 子句的值
+                    null,          // 不对行进行分组
+                    null,          // 不按行组过滤
+                    orderBy,       // 排序顺序
+                    limit          // 最大行数
+            );
+        }
 
         // 告诉游标要监视的 URI，因此它知道何时其源数据发生更改
-        c.setNotificationUri(getContext().getContentResolver(), uri);
+        c.setNotificationUri(getContext().getContentResolver(), notificationUri);
         return c;
     }
 
+    /**
+     * 从行缓存中查询单个笔记，未命中时读取整行并放入缓存。返回的游标在 requery() 时重新读取这条笔记。
+     *
+     * @return 包含笔记的游标，笔记不存在时为空游标；如果投影包含缓存行中没有的列，则返回 null。
+     */
+    private Cursor queryCachedNote(Uri uri, String[] projection) {
+        int[] positions = mRowCache.resolveProjection(projection);
+        if (positions == null) {
+            return null;
+        }
+
+        long noteId = Long.parseLong(uri.getPathSegments().get(NotePad.Notes.NOTE_ID_PATH_POSITION));
+        Cursor cursor = mRowCache.newCursor(projection, positions, noteId, loadNoteRow(noteId),
+                mRowLoader);
+        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        return cursor;
+    }
+
+    /**
+     * 从行缓存中读取一条笔记的整行，未命中时读取数据库并放入缓存。
+     *
+     * @return 笔记的行；笔记不存在时返回 null。
+     */
+    private Object[] loadNoteRow(long noteId) {
+        Object[] row = mRowCache.get(noteId);
+        if (row == null) {
+            // 在读取之前记录代数，读取期间发生的写操作会让这一行不被缓存
+            long generation = mRowCache.getGeneration();
+            Cursor c = mOpenHelper.getReadableDatabase().query(NotePad.Notes.TABLE_NAME,
+                    ROW_CACHE_COLUMNS, NotePad.Notes._ID + " = " + noteId, null, null, null, null);
+            try {
+                if (c.moveToFirst()) {
+                    row = mRowCache.readRow(c);
+                    mRowCache.put(noteId, row, generation);
+                }
+            } finally {
+                c.close();
+            }
+        }
+        return row;
+    }
+
+    /**
+     * 返回行缓存的统计信息，见 {@link NotePad#METHOD_ROW_CACHE_STATS}；
+     * 或者按 URI 模式和操作统计的性能指标，见 {@link NotePad#METHOD_PROVIDER_METRICS}。
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (NotePad.METHOD_ROW_CACHE_STATS.equals(method)) {
+            Bundle stats = new Bundle();
+            stats.putLong(NotePad.KEY_ROW_CACHE_HITS, mRowCache.getHits());
+            stats.putLong(NotePad.KEY_ROW_CACHE_MISSES, mRowCache.getMisses());
+            stats.putInt(NotePad.KEY_ROW_CACHE_SIZE, mRowCache.size());
+            stats.putLong(NotePad.KEY_ROW_CACHE_BYTES, mRowCache.getBytes());
+            return stats;
+        }
+        if (NotePad.METHOD_PROVIDER_METRICS.equals(method)) {
+            Bundle snapshot = mMetrics.snapshot();
+            if (NotePad.METRICS_ARG_RESET.equals(arg)) {
+                mMetrics.reset();
+            }
+            return snapshot;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * 读取并校验 URI 中的 {@link NotePad.Notes#LIMIT_QUERY_PARAMETER} 参数，以及可选的
+     * {@link NotePad.Notes#OFFSET_QUERY_PARAMETER} 参数。
+     *
+     * @return LIMIT 子句的内容，指定了偏移时为 "偏移,行数"；如果没有指定则返回 null。
+     * @throws IllegalArgumentException 如果行数不是正整数、偏移不是非负整数，或者只指定了偏移。
+     */
+    private static String parseLimit(Uri uri) {
+        String limit = uri.getQueryParameter(NotePad.Notes.LIMIT_QUERY_PARAMETER);
+        String offset = uri.getQueryParameter(NotePad.Notes.OFFSET_QUERY_PARAMETER);
+        if (limit == null) {
+            if (offset != null) {
+                throw new IllegalArgumentException("Offset without limit in URI " + uri);
+            }
+            return null;
+        }
+        try {
+            if (Integer.parseInt(limit) > 0 && (offset == null || Integer.parseInt(offset) >= 0)) {
+                return offset == null ? limit : offset + "," + limit;
+            }
+        } catch (NumberFormatException e) {
+            // 在下面统一报告
+        }
+        throw new IllegalArgumentException("Invalid limit in URI " + uri);
+    }
+
+    /**
+     * 读取并校验 URI 中的 {@link NotePad.NoteChunks#START_QUERY_PARAMETER} 参数。
+     *
+     * @return 分块范围的起始序号；如果没有指定则返回 0。
+     * @throws IllegalArgumentException 如果参数不是非负整数。
+     */
+    private static int parseChunkStart(Uri uri) {
+        String start = uri.getQueryParameter(NotePad.NoteChunks.START_QUERY_PARAMETER);
+        if (start == null) {
+            return 0;
+        }
+        try {
+            int value = Integer.parseInt(start);
+            if (value >= 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // 在下面统一报告
+        }
+        throw new IllegalArgumentException("Invalid chunk start in URI " + uri);
+    }
+
+    /**
+     * 如果 URI 中带有键集分页参数，则向查询追加 "排在给定键之后" 的条件。参数先解析为数字，
+     * 因此可以安全地直接拼接到 where 子句中。
+     *
+     * @return 如果追加了分页条件，则返回 true。
+     * @throws IllegalArgumentException 如果参数不是数字。
+     */
+    private static boolean appendKeysetWhere(SQLiteQueryBuilder qb, Uri uri) {
+        String beforeModified = uri.getQueryParameter(NotePad.Notes.BEFORE_MODIFIED_QUERY_PARAMETER);
+        if (beforeModified == null) {
+            return false;
+        }
+
+        String beforeId = uri.getQueryParameter(NotePad.Notes.BEFORE_ID_QUERY_PARAMETER);
+        try {
+            long modified = Long.parseLong(beforeModified);
+            String where = NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE + " < " + modified;
+            if (beforeId != null) {
+                // 写成对修改日期的范围条件加一个过滤条件，保证 SQLite 从键的位置开始倒序遍历列表索引；
+                // 较旧的 SQLite 版本对 OR 的形式会分别查找两部分，再对结果排序
+                where = NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE + " <= " + modified
+                        + " AND (" + where + " OR " + NotePad.Notes._ID + " < "
+                        + Long.parseLong(beforeId) + ")";
+            }
+            qb.appendWhere(where);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page key in URI " + uri);
+        }
+        return true;
+    }
+
+    /**
+     * 返回一个新的参数数组，其中 first 位于传入参数之前。
+     */
+    private static String[] prependArgument(String first, String[] args) {
+        if (args == null) {
+            return new String[] { first };
+        }
+        String[] result = new String[args.length + 1];
+        result[0] = first;
+        System.arraycopy(args, 0, result, 1, args.length);
+        return result;
+    }
+
     /**
      * 当客户端调用 {@link android.content.ContentResolver#getType(Uri)} 时被调用。
      * 返回给定 URI 的 MIME 数据类型。
@@ -322,15 +1083,23 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
          */
         switch (sUriMatcher.match(uri)) {
 
-            // 如果模式是针对笔记或活动文件夹，则返回通用内容类型。
+            // 如果模式是针对笔记、活动文件夹或搜索结果，则返回通用内容类型。
             case NOTES:
             case LIVE_FOLDER_NOTES:
+            case NOTES_SEARCH:
                 return NotePad.Notes.CONTENT_TYPE;
 
             // 如果模式是针对笔记 ID，则返回笔记 ID 内容类型。
             case NOTE_ID:
                 return NotePad.Notes.CONTENT_ITEM_TYPE;
 
+            // 内容分块的类型
+            case NOTE_CHUNKS:
+                return NotePad.NoteChunks.CONTENT_TYPE;
+
+            case NOTE_CHUNK_ID:
+                return NotePad.NoteChunks.CONTENT_ITEM_TYPE;
+
             // 如果 URI 模式不匹配任何允许的模式，则抛出异常。
             default:
                 throw new IllegalArgumentException("Unknown URI " + uri);
@@ -345,12 +1114,18 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
             new String[] { ClipDescription.MIMETYPE_TEXT_PLAIN });
 
     /**
-     * 返回可用数据流的类型。 特定笔记的 URI 是支持的。
-     * 应用程序可以将该笔记转换为纯文本流。
+     * 描述导出整个笔记目录时支持的 MIME 类型。
+     */
+    static ClipDescription EXPORT_STREAM_TYPES = new ClipDescription(null,
+            new String[] { NotePad.Notes.EXPORT_NDJSON_TYPE, NotePad.Notes.EXPORT_ZIP_TYPE });
+
+    /**
+     * 返回可用数据流的类型。 特定笔记的 URI 可以转换为纯文本流；
+     * 笔记目录的 URI 可以导出为 NDJSON 或 zip 归档。
      *
      * @param uri 需要分析的 URI
      * @param mimeTypeFilter MIME 类型过滤器。此方法仅返回与过滤器匹配的 MIME 类型的数据流。
-     * @return 数据流 MIME 类型。 当前仅返回 text/plain。
+     * @return 数据流 MIME 类型。
      * @throws IllegalArgumentException 如果 URI 模式与任何支持的模式不匹配。
      */
     @Override
@@ -360,9 +1135,15 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
          */
         switch (sUriMatcher.match(uri)) {
 
-            // 如果模式是针对笔记或活动文件夹，则返回 null。 不支持该类型 URI 的数据流。
+            // 如果模式是针对笔记目录，则返回支持的导出格式。
             case NOTES:
+                return EXPORT_STREAM_TYPES.filterMimeTypes(mimeTypeFilter);
+
+            // 如果模式是针对活动文件夹或搜索结果，则返回 null。 不支持该类型 URI 的数据流。
             case LIVE_FOLDER_NOTES:
+            case NOTES_SEARCH:
+            case NOTE_CHUNKS:
+            case NOTE_CHUNK_ID:
                 return null;
 
             // 如果模式是针对笔记 ID 且 MIME 过滤器为 text/plain，则返回 text/plain
@@ -383,13 +1164,29 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
      *
      * @param uri 指向数据流的 URI 模式
      * @param mimeTypeFilter 包含 MIME 类型的字符串。此方法尝试获取具有此 MIME 类型的数据流。
-     * @param opts 调用者提供的其他选项。可以根据内容提供者的要求进行解释。
+     * @param opts 调用者提供的其他选项。导出笔记目录时可以包含
+     * {@link NotePad.Notes#EXPORT_SELECTION_OPTION} 和 {@link NotePad.Notes#EXPORT_SELECTION_ARGS_OPTION}。
      * @return AssetFileDescriptor 文件的句柄。
      * @throws FileNotFoundException 如果没有与传入的 URI 关联的文件。
      */
     @Override
     public AssetFileDescriptor openTypedAssetFile(Uri uri, String mimeTypeFilter, Bundle opts)
             throws FileNotFoundException {
+        // 这里只计入打开管道之前的查询耗时；写出的字节数在 writeDataToPipe() 中另外计入
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+        try {
+            return openTypedAssetFile(uri, match, mimeTypeFilter, opts);
+        } finally {
+            mMetrics.record(match, ProviderMetrics.OP_OPEN_FILE, start, 0);
+        }
+    }
+
+    /**
+     * 按已经匹配的 URI 模式打开数据流。
+     */
+    private AssetFileDescriptor openTypedAssetFile(Uri uri, int match, String mimeTypeFilter,
+                                                   Bundle opts) throws FileNotFoundException {
 
         // 检查 MIME 类型过滤器是否与支持的 MIME 类型匹配。
         String[] mimeTypes = getStreamTypes(uri, mimeTypeFilter);
@@ -397,6 +1194,21 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
         // 如果 MIME 类型受支持
         if (mimeTypes != null) {
 
+            // 导出笔记目录。查询结果按 ID 顺序逐行写入管道，允许没有任何笔记。
+            if (match == NOTES) {
+                String selection = null;
+                String[] selectionArgs = null;
+                if (opts != null) {
+                    selection = opts.getString(NotePad.Notes.EXPORT_SELECTION_OPTION);
+                    selectionArgs = opts.getStringArray(NotePad.Notes.EXPORT_SELECTION_ARGS_OPTION);
+                }
+                Cursor c = query(uri, EXPORT_PROJECTION, selection, selectionArgs,
+                        NotePad.Notes._ID + " ASC");
+                return new AssetFileDescriptor(
+                        openPipeHelper(uri, mimeTypes[0], opts, c, this), 0,
+                        AssetFileDescriptor.UNKNOWN_LENGTH);
+            }
+
             // 检索此 URI 的笔记。 使用定义的查询方法，而不是使用数据库查询方法。
             Cursor c = query(
                     uri,                    // 笔记的 URI
@@ -436,14 +1248,46 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
     @Override
     public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType,
                                 Bundle opts, Cursor c) {
-        // 我们当前仅支持从单个笔记条目转换为文本，因此这里无需进行游标数据类型检查。
-        FileOutputStream fout = new FileOutputStream(output.getFileDescriptor());
+        ProviderMetrics.CountingOutputStream fout = new ProviderMetrics.CountingOutputStream(
+                new FileOutputStream(output.getFileDescriptor()));
+        try {
+            // 导出格式的游标来自 EXPORT_PROJECTION，其余情况是单个笔记条目转换为文本。
+            if (NotePad.Notes.EXPORT_NDJSON_TYPE.equals(mimeType)) {
+                writeNdjson(fout, c);
+            } else if (NotePad.Notes.EXPORT_ZIP_TYPE.equals(mimeType)) {
+                writeZip(fout, c);
+            } else {
+                writeText(fout, c);
+            }
+        } finally {
+            mMetrics.addBytes(sUriMatcher.match(uri), ProviderMetrics.OP_OPEN_FILE,
+                    fout.getCount());
+        }
+    }
+
+    /**
+     * 把单个笔记的标题和内容以纯文本写入管道。
+     */
+    private void writeText(OutputStream fout, Cursor c) {
         PrintWriter pw = null;
         try {
             pw = new PrintWriter(new OutputStreamWriter(fout, "UTF-8"));
             pw.println(c.getString(READ_NOTE_TITLE_INDEX));
             pw.println("");
-            pw.println(c.getString(READ_NOTE_NOTE_INDEX));
+            if (c.getInt(READ_NOTE_CHUNK_COUNT_INDEX) > 0) {
+                // 分块存储的内容逐块写出，不在内存中拼接完整内容
+                Cursor chunks = queryChunkText(c.getLong(READ_NOTE_ID_INDEX));
+                try {
+                    while (chunks.moveToNext()) {
+                        pw.write(chunks.getString(0));
+                    }
+                } finally {
+                    chunks.close();
+                }
+                pw.println();
+            } else {
+                pw.println(c.getString(READ_NOTE_NOTE_INDEX));
+            }
         } catch (UnsupportedEncodingException e) {
             Log.w(TAG, "Ooops", e);
         } finally {
@@ -459,6 +1303,109 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
     }
 //END_INCLUDE(stream)
 
+    /**
+     * 把导出游标中的笔记以 NDJSON 格式写入管道。
+     */
+    private void writeNdjson(OutputStream fout, Cursor c) {
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(fout, "UTF-8"),
+                    EXPORT_BUFFER_SIZE);
+            NoteNdjsonWriter json = new NoteNdjsonWriter(out);
+            while (c.moveToNext()) {
+                json.beginNote(
+                        c.getLong(EXPORT_ID_INDEX),
+                        c.getString(EXPORT_TITLE_INDEX),
+                        c.getLong(EXPORT_CREATE_DATE_INDEX),
+                        c.getLong(EXPORT_MODIFICATION_DATE_INDEX),
+                        c.getInt(EXPORT_COLOR_INDEX));
+                if (c.getInt(EXPORT_CHUNK_COUNT_INDEX) > 0) {
+                    Cursor chunks = queryChunkText(c.getLong(EXPORT_ID_INDEX));
+                    try {
+                        while (chunks.moveToNext()) {
+                            json.appendNote(chunks.getString(0));
+                        }
+                    } finally {
+                        chunks.close();
+                    }
+                } else {
+                    json.appendNote(c.getString(EXPORT_NOTE_INDEX));
+                }
+                json.endNote();
+            }
+            out.flush();
+        } catch (IOException e) {
+            // 读取方可能提前关闭了管道，例如取消了导出
+            Log.w(TAG, "Export aborted", e);
+        } finally {
+            c.close();
+            try {
+                fout.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /**
+     * 把导出游标中的笔记写成 zip 归档，每个笔记一个文本文件。
+     */
+    private void writeZip(OutputStream fout, Cursor c) {
+        try {
+            ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(fout));
+            Writer out = new BufferedWriter(new OutputStreamWriter(zip, "UTF-8"),
+                    EXPORT_BUFFER_SIZE);
+            while (c.moveToNext()) {
+                long noteId = c.getLong(EXPORT_ID_INDEX);
+                ZipEntry entry = new ZipEntry("note-" + noteId + ".txt");
+                entry.setTime(c.getLong(EXPORT_MODIFICATION_DATE_INDEX));
+                zip.putNextEntry(entry);
+
+                String title = c.getString(EXPORT_TITLE_INDEX);
+                out.write(title == null ? "" : title);
+                out.write("\n\n");
+                if (c.getInt(EXPORT_CHUNK_COUNT_INDEX) > 0) {
+                    Cursor chunks = queryChunkText(noteId);
+                    try {
+                        while (chunks.moveToNext()) {
+                            out.write(chunks.getString(0));
+                        }
+                    } finally {
+                        chunks.close();
+                    }
+                } else {
+                    String note = c.getString(EXPORT_NOTE_INDEX);
+                    out.write(note == null ? "" : note);
+                }
+
+                // 条目结束前把缓冲的字符写入归档，但不关闭底层流
+                out.flush();
+                zip.closeEntry();
+            }
+            zip.finish();
+            zip.flush();
+        } catch (IOException e) {
+            // 读取方可能提前关闭了管道，例如取消了导出
+            Log.w(TAG, "Export aborted", e);
+        } finally {
+            c.close();
+            try {
+                fout.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    /**
+     * 按顺序查询笔记所有分块的内容。游标按需填充，因此不会一次载入整个笔记。
+     */
+    private Cursor queryChunkText(long noteId) {
+        return mOpenHelper.getReadableDatabase().query(
+                NotePad.NoteChunks.TABLE_NAME,
+                new String[] { NotePad.NoteChunks.COLUMN_NAME_TEXT },
+                NotePad.NoteChunks.COLUMN_NAME_NOTE_ID + " = " + noteId,
+                null, null, null,
+                NotePad.NoteChunks.DEFAULT_SORT_ORDER);
+    }
+
     /**
      * 当客户端调用 {@link android.content.ContentResolver#insert(Uri, ContentValues)} 时调用此方法。
      * 向数据库插入新行。此方法为任何未包含在传入映射中的列设置默认值。
@@ -468,9 +1415,29 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
      */
     @Override
     public Uri insert(Uri uri, ContentValues initialValues) {
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+        long rows = 0;
+        try {
+            Uri inserted = insert(uri, match, initialValues);
+            rows = 1;
+            return inserted;
+        } finally {
+            mMetrics.record(match, ProviderMetrics.OP_INSERT, start, rows);
+        }
+    }
+
+    /**
+     * 按已经匹配的 URI 模式执行插入。
+     */
+    private Uri insert(Uri uri, int match, ContentValues initialValues) {
+        // 向分块目录插入表示写入单个分块
+        if (match == NOTE_CHUNKS) {
+            return insertChunk(uri, initialValues);
+        }
 
         // 验证传入的 URI。 仅允许完整提供者 URI 进行插入。
-        if (sUriMatcher.match(uri) != NOTES) {
+        if (match != NOTES) {
             throw new IllegalArgumentException("Unknown URI " + uri);
         }
 
@@ -510,25 +1477,41 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
             values.put(NotePad.Notes.COLUMN_NAME_NOTE, "");
         }
 
+        // 分块数量和预览由提供者维护。内容超过一个分块时，note 列只保存第一个分块。
+        values.remove(NotePad.Notes.COLUMN_NAME_CHUNK_COUNT);
+        values.remove(NotePad.Notes.COLUMN_NAME_PREVIEW);
+        List<String> chunks = prepareBody(values);
+
         // 以“写入”模式打开数据库对象。
         SQLiteDatabase db = mOpenHelper.getWritableDatabase();
 
-        // 执行插入并返回新笔记的 ID。
-        long rowId = db.insert(
-                NotePad.Notes.TABLE_NAME,        // 要插入的表。
-                NotePad.Notes.COLUMN_NAME_NOTE,  // 垃圾，SQLite 将此列的值设置为 null
-                // 如果值为空。
-                values                           // 列名及要插入的值的映射
-                // 到列中。
-        );
+        // 在一个事务中插入笔记行及其内容分块
+        long rowId;
+        db.beginTransaction();
+        try {
+            // 执行插入并返回新笔记的 ID。
+            rowId = db.insert(
+                    NotePad.Notes.TABLE_NAME,        // 要插入的表。
+                    NotePad.Notes.COLUMN_NAME_NOTE,  // 垃圾，SQLite 将此列的值设置为 null
+                    // 如果值为空。
+                    values                           // 列名及要插入的值的映射
+                    // 到列中。
+            );
+            if (rowId > 0 && !chunks.isEmpty()) {
+                storeChunks(db, rowId, chunks);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
 
         // 如果插入成功，则行 ID 存在。
         if (rowId > 0) {
             // 创建一个带有笔记 ID 模式的 URI，并将新行 ID 附加到其后。
             Uri noteUri = ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, rowId);
 
-            // 通知针对该提供者注册的观察者数据发生了更改。
-            getContext().getContentResolver().notifyChange(noteUri, null);
+            // 通知针对该提供者注册的观察者插入了这一条笔记。
+            notifyNoteChange(rowId, NotePad.Notes.CHANGE_INSERT, true);
             return noteUri;
         }
 
@@ -550,6 +1533,21 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
      */
     @Override
     public int delete(Uri uri, String where, String[] whereArgs) {
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+        int count = 0;
+        try {
+            count = delete(uri, match, where, whereArgs);
+            return count;
+        } finally {
+            mMetrics.record(match, ProviderMetrics.OP_DELETE, start, count);
+        }
+    }
+
+    /**
+     * 按已经匹配的 URI 模式执行删除。
+     */
+    private int delete(Uri uri, int match, String where, String[] whereArgs) {
 
         // 以"写入"模式打开数据库对象。
         SQLiteDatabase db = mOpenHelper.getWritableDatabase();
@@ -558,7 +1556,7 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
         int count;
 
         // 根据传入的 URI 模式执行删除。
-        switch (sUriMatcher.match(uri)) {
+        switch (match) {
 
             // 如果传入模式与一般的笔记模式匹配，则根据传入的 "where" 列和参数执行删除。
             case NOTES:
@@ -595,6 +1593,17 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
                 );
                 break;
 
+            // 删除分块目录表示截断：删除从起始序号开始的所有分块。
+            // 不支持额外的选择条件，因为它可能在分块序列中间留下空洞。
+            case NOTE_CHUNKS:
+                if (where != null) {
+                    throw new IllegalArgumentException("Selection not supported for " + uri);
+                }
+                count = truncateChunks(db,
+                        Long.parseLong(uri.getPathSegments().get(NotePad.Notes.NOTE_ID_PATH_POSITION)),
+                        parseChunkStart(uri));
+                break;
+
             // 如果传入的模式无效，抛出异常。
             default:
                 throw new IllegalArgumentException("Unknown URI " + uri);
@@ -602,9 +1611,11 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
 
         /* 获取当前上下文的内容解析器对象的句柄，并通知它
          * 传入的 URI 更改。该对象将此传递给解析器框架，
-         * 注册到提供者的观察者会收到通知。
+         * 注册到提供者的观察者会收到通知。没有删除任何行时不发出通知。
          */
-        getContext().getContentResolver().notifyChange(uri, null);
+        if (count > 0) {
+            notifyWrite(uri, match, NotePad.Notes.CHANGE_DELETE, true);
+        }
 
         // 返回删除的行数。
         return count;
@@ -629,25 +1640,56 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
      */
     @Override
     public int update(Uri uri, ContentValues values, String where, String[] whereArgs) {
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+        int count = 0;
+        try {
+            count = update(uri, match, values, where, whereArgs);
+            return count;
+        } finally {
+            mMetrics.record(match, ProviderMetrics.OP_UPDATE, start, count);
+        }
+    }
+
+    /**
+     * 按已经匹配的 URI 模式执行更新。
+     */
+    private int update(Uri uri, int match, ContentValues values, String where,
+                       String[] whereArgs) {
 
         // 以"写入"模式打开数据库对象。
         SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         int count;
         String finalWhere;
 
+        // 分块数量和预览由提供者维护。内容超过一个分块时，note 列只保存第一个分块。
+        ContentValues rowValues = new ContentValues(values);
+        rowValues.remove(NotePad.Notes.COLUMN_NAME_CHUNK_COUNT);
+        rowValues.remove(NotePad.Notes.COLUMN_NAME_PREVIEW);
+
         // 根据传入的 URI 模式执行更新
-        switch (sUriMatcher.match(uri)) {
+        switch (match) {
 
             // 如果传入的 URI 匹配一般笔记模式，则根据传入的数据执行更新。
             case NOTES:
-
-                // 执行更新并返回更新的行数。
-                count = db.update(
-                        NotePad.Notes.TABLE_NAME, // 数据库表名。
-                        values,                   // 要使用的列名和新值的映射。
-                        where,                    // where 子句列名。
-                        whereArgs                 // 用于选择的 where 子句值。
-                );
+                List<String> chunks = prepareBody(rowValues);
+                if (chunks == null) {
+
+                    // 执行更新并返回更新的行数。
+                    count = db.update(
+                            NotePad.Notes.TABLE_NAME, // 数据库表名。
+                            rowValues,                // 要使用的列名和新值的映射。
+                            where,                    // where 子句列名。
+                            whereArgs                 // 用于选择的 where 子句值。
+                    );
+                } else {
+                    // 更新包含笔记内容时，每个笔记的分块需要分别存储
+                    count = 0;
+                    for (long id : queryNoteIds(db, where, whereArgs)) {
+                        count += updateNote(db, id, rowValues, chunks,
+                                NotePad.Notes._ID + " = " + id, null);
+                    }
+                }
                 break;
 
             // 如果传入的 URI 匹配一个单独的笔记 ID，则根据传入的数据执行更新，
@@ -672,15 +1714,31 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
                 }
 
                 // 执行更新并返回更新的行数。
-                count = db.update(
-                        NotePad.Notes.TABLE_NAME, // 数据库表名。
-                        values,                   // 要使用的列名和新值的映射。
+                count = updateNote(
+                        db,
+                        Long.parseLong(noteId),   // 要更新的笔记
+                        rowValues,                // 要使用的列名和新值的映射。
+                        prepareBody(rowValues),   // 需要分块存储的内容，没有内容时为 null
                         finalWhere,               // 要使用的最终 WHERE 子句
                         // 对于 whereArgs 的占位符
                         whereArgs                 // 要在删除行时选择的 where 子句值，或者
                         // 如果值在 where 参数中，则为 null。
                 );
                 break;
+
+            // 如果传入的 URI 匹配单个分块，则替换该分块的内容。
+            case NOTE_CHUNK_ID:
+                count = updateChunk(uri, db, values, where, whereArgs);
+                break;
+
+            // 如果传入的 URI 匹配分块目录，则替换一段连续的分块。
+            case NOTE_CHUNKS:
+                if (where != null) {
+                    throw new IllegalArgumentException("Selection not supported for " + uri);
+                }
+                count = replaceChunkRange(uri, db, values);
+                break;
+
             // 如果传入的模式无效，则抛出异常。
             default:
                 throw new IllegalArgumentException("Unknown URI " + uri);
@@ -688,14 +1746,576 @@ public class NotePadProvider extends ContentProvider implements PipeDataWriter<C
 
         /* 获取当前上下文的内容解析器对象的句柄，并通知它
          * 传入的 URI 更改。该对象将此传递给解析器框架，
-         * 注册到提供者的观察者会收到通知。
+         * 注册到提供者的观察者会收到通知。没有更新任何行时不发出通知；
+         * 替换一段分块时返回的是分块数量，即使为 0 内容也可能已经改变。
          */
-        getContext().getContentResolver().notifyChange(uri, null);
+        if (count > 0 || match == NOTE_CHUNKS) {
+            notifyWrite(uri, match, NotePad.Notes.CHANGE_UPDATE,
+                    values.containsKey(NotePad.Notes.COLUMN_NAME_TITLE));
+        }
 
         // 返回更新的行数。
         return count;
     }
 
+    /**
+     * 更新单个笔记行。如果更新包含需要分块的内容，则在同一事务中写入分块。
+     *
+     * @param chunks {@link #prepareBody(ContentValues)} 的结果，更新不包含内容时为 null。
+     * @return 更新的行数。
+     */
+    private int updateNote(SQLiteDatabase db, long noteId, ContentValues values,
+                           List<String> chunks, String where, String[] whereArgs) {
+        if (chunks == null) {
+            return db.update(NotePad.Notes.TABLE_NAME, values, where, whereArgs);
+        }
+
+        db.beginTransaction();
+        try {
+            int count = db.update(NotePad.Notes.TABLE_NAME, values, where, whereArgs);
+            if (count > 0) {
+                storeChunks(db, noteId, chunks);
+            }
+            db.setTransactionSuccessful();
+            return count;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * 返回满足选择条件的所有笔记的 ID。
+     */
+    private static List<Long> queryNoteIds(SQLiteDatabase db, String where, String[] whereArgs) {
+        ArrayList<Long> ids = new ArrayList<Long>();
+        Cursor c = db.query(NotePad.Notes.TABLE_NAME, new String[] { NotePad.Notes._ID },
+                where, whereArgs, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                ids.add(c.getLong(0));
+            }
+        } finally {
+            c.close();
+        }
+        return ids;
+    }
+
+    /**
+     * 如果 values 包含笔记内容，则按 {@link NotePad.NoteChunks#CHUNK_SIZE} 切分。内容需要分块时，
+     * values 中的内容被替换为第一个分块；同时设置 values 中的分块数量和预览。
+     *
+     * @return 需要写入分块表的分块。values 不包含内容时返回 null；内容不需要分块时返回空列表。
+     */
+    private static List<String> prepareBody(ContentValues values) {
+        if (!values.containsKey(NotePad.Notes.COLUMN_NAME_NOTE)) {
+            return null;
+        }
+
+        String body = values.getAsString(NotePad.Notes.COLUMN_NAME_NOTE);
+        values.put(NotePad.Notes.COLUMN_NAME_PREVIEW, NoteText.buildPreview(body));
+
+        List<String> chunks = NoteText.splitBody(body, NotePad.NoteChunks.CHUNK_SIZE);
+        if (!chunks.isEmpty()) {
+            values.put(NotePad.Notes.COLUMN_NAME_NOTE, chunks.get(0));
+        }
+        values.put(NotePad.Notes.COLUMN_NAME_CHUNK_COUNT, chunks.size());
+        return chunks;
+    }
+
+    /**
+     * 根据 note 列中的内容开头重新生成笔记的预览。分块被直接修改之后调用。
+     */
+    private static void updatePreview(SQLiteDatabase db, long noteId) {
+        Cursor c = db.rawQuery("SELECT substr(" + NotePad.Notes.COLUMN_NAME_NOTE + ", 1, "
+                + PREVIEW_SOURCE_LENGTH + ") FROM " + NotePad.Notes.TABLE_NAME + " WHERE "
+                + NotePad.Notes._ID + " = " + noteId, null);
+        try {
+            if (c.moveToFirst()) {
+                ContentValues values = new ContentValues();
+                values.put(NotePad.Notes.COLUMN_NAME_PREVIEW,
+                        NoteText.buildPreview(c.getString(0)));
+                db.update(NotePad.Notes.TABLE_NAME, values, NotePad.Notes._ID + " = " + noteId, null);
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * 把笔记的全部分块替换为给定的分块。已存储的分块逐个比较，只重写内容发生变化的分块，
+     * 多余的分块被删除。如果内容是分块存储的，则为完整内容重建全文索引。
+     */
+    private static void storeChunks(SQLiteDatabase db, long noteId, List<String> chunks) {
+        Cursor c = db.query(NotePad.NoteChunks.TABLE_NAME,
+                new String[] { NotePad.NoteChunks.COLUMN_NAME_TEXT },
+                NotePad.NoteChunks.COLUMN_NAME_NOTE_ID + " = " + noteId,
+                null, null, null,
+                NotePad.NoteChunks.DEFAULT_SORT_ORDER);
+        try {
+            ContentValues chunk = new ContentValues();
+            for (int seq = 0; seq < chunks.size(); seq++) {
+                String text = chunks.get(seq);
+
+                // 分块序号从 0 开始连续编号，因此游标位置就是分块序号
+                if (c.moveToPosition(seq) && text.equals(c.getString(0))) {
+                    continue;
+                }
+                chunk.put(NotePad.NoteChunks.COLUMN_NAME_NOTE_ID, noteId);
+                chunk.put(NotePad.NoteChunks.COLUMN_NAME_SEQUENCE, seq);
+                chunk.put(NotePad.NoteChunks.COLUMN_NAME_TEXT, text);
+                db.insertWithOnConflict(NotePad.NoteChunks.TABLE_NAME, null, chunk,
+                        SQLiteDatabase.CONFLICT_REPLACE);
+            }
+        } finally {
+            c.close();
+        }
+
+        db.delete(NotePad.NoteChunks.TABLE_NAME,
+                NotePad.NoteChunks.COLUMN_NAME_NOTE_ID + " = " + noteId + " AND "
+                        + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + " >= " + chunks.size(),
+                null);
+        if (!chunks.isEmpty()) {
+            reindexChunkedNote(db, noteId);
+        }
+    }
+
+    /**
+     * 在分块被直接修改之后，根据分块表更新笔记行的分块数量和第一个分块，并重建全文索引。
+     */
+    static void syncChunkedNote(SQLiteDatabase db, long noteId) {
+        String chunksOfNote = " FROM " + NotePad.NoteChunks.TABLE_NAME + " WHERE "
+                + NotePad.NoteChunks.COLUMN_NAME_NOTE_ID + " = " + noteId;
+        db.execSQL("UPDATE " + NotePad.Notes.TABLE_NAME + " SET "
+                + NotePad.Notes.COLUMN_NAME_CHUNK_COUNT + " = (SELECT COUNT(*)" + chunksOfNote + "), "
+                + NotePad.Notes.COLUMN_NAME_NOTE + " = coalesce((SELECT "
+                + NotePad.NoteChunks.COLUMN_NAME_TEXT + chunksOfNote + " AND "
+                + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + " = 0), '')"
+                + " WHERE " + NotePad.Notes._ID + " = " + noteId);
+        if (DatabaseUtils.longForQuery(db, "SELECT COUNT(*)" + chunksOfNote, null) > 0) {
+            reindexChunkedNote(db, noteId);
+        }
+    }
+
+    /**
+     * 用按顺序拼接的全部分块替换全文索引中的笔记内容。note 列只包含第一个分块，
+     * 所以触发器写入的索引内容是不完整的。拼接在 SQLite 中完成，不经过游标。
+     */
+    private static void reindexChunkedNote(SQLiteDatabase db, long noteId) {
+        db.execSQL("UPDATE " + FTS_TABLE_NAME + " SET " + NotePad.Notes.COLUMN_NAME_NOTE
+                + " = (SELECT group_concat(" + NotePad.NoteChunks.COLUMN_NAME_TEXT + ", '') FROM"
+                + " (SELECT " + NotePad.NoteChunks.COLUMN_NAME_TEXT + " FROM "
+                + NotePad.NoteChunks.TABLE_NAME + " WHERE "
+                + NotePad.NoteChunks.COLUMN_NAME_NOTE_ID + " = " + noteId + " ORDER BY "
+                + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + "))"
+                + " WHERE docid = " + noteId);
+    }
+
+    /**
+     * 写入单个分块。序号等于当前分块数量时追加一个分块，否则替换已有的分块。
+     *
+     * @return 写入的分块的 URI。
+     * @throws IllegalArgumentException 如果缺少序号或内容，或者序号会在分块序列中留下空洞。
+     * @throws SQLException 如果笔记不存在。
+     */
+    private Uri insertChunk(Uri uri, ContentValues values) {
+        long noteId = Long.parseLong(uri.getPathSegments().get(NotePad.Notes.NOTE_ID_PATH_POSITION));
+        Integer seq = values == null ? null
+                : values.getAsInteger(NotePad.NoteChunks.COLUMN_NAME_SEQUENCE);
+        String text = values == null ? null
+                : values.getAsString(NotePad.NoteChunks.COLUMN_NAME_TEXT);
+        if (seq == null || text == null) {
+            throw new IllegalArgumentException("Chunk sequence and text required for " + uri);
+        }
+
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long count = prepareChunkWrite(db, noteId);
+            if (count < 0) {
+                throw new SQLException("Failed to insert row into " + uri);
+            }
+            if (seq < 0 || seq > count) {
+                throw new IllegalArgumentException("Chunk sequence out of range in " + uri);
+            }
+
+            ContentValues chunk = new ContentValues();
+            chunk.put(NotePad.NoteChunks.COLUMN_NAME_NOTE_ID, noteId);
+            chunk.put(NotePad.NoteChunks.COLUMN_NAME_SEQUENCE, seq);
+            chunk.put(NotePad.NoteChunks.COLUMN_NAME_TEXT, text);
+            db.insertWithOnConflict(NotePad.NoteChunks.TABLE_NAME, null, chunk,
+                    SQLiteDatabase.CONFLICT_REPLACE);
+            chunksChanged(db, noteId);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        notifyNoteChange(noteId, NotePad.Notes.CHANGE_UPDATE, false);
+        return NotePad.NoteChunks.buildChunkUri(noteId, seq);
+    }
+
+    /**
+     * 替换单个已有分块的内容。
+     *
+     * @return 更新的行数。
+     */
+    private int updateChunk(Uri uri, SQLiteDatabase db, ContentValues values,
+                            String where, String[] whereArgs) {
+        String text = values.getAsString(NotePad.NoteChunks.COLUMN_NAME_TEXT);
+        if (text == null) {
+            throw new IllegalArgumentException("Chunk text required for " + uri);
+        }
+        long noteId = Long.parseLong(uri.getPathSegments().get(NotePad.Notes.NOTE_ID_PATH_POSITION));
+
+        String finalWhere = NotePad.NoteChunks.COLUMN_NAME_NOTE_ID + " = " + noteId + " AND "
+                + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + " = "
+                + uri.getPathSegments().get(NotePad.NoteChunks.SEQUENCE_PATH_POSITION);
+        if (where != null) {
+            finalWhere = finalWhere + " AND " + where;
+        }
+
+        ContentValues chunk = new ContentValues();
+        chunk.put(NotePad.NoteChunks.COLUMN_NAME_TEXT, text);
+
+        db.beginTransaction();
+        try {
+            int count = db.update(NotePad.NoteChunks.TABLE_NAME, chunk, finalWhere, whereArgs);
+            if (count > 0) {
+                chunksChanged(db, noteId);
+            }
+            db.setTransactionSuccessful();
+            return count;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * 用给定的文本替换笔记中从 start 开始的 count 个分块。文本按 {@link NotePad.NoteChunks#CHUNK_SIZE}
+     * 重新切分，之后的分块的序号随之移动。笔记内容还直接存放在 note 列中时，先把它移到第 0 个分块。
+     *
+     * @return 替换后这段文本占用的分块数量。
+     * @throws IllegalArgumentException 如果缺少文本或范围参数，或者范围超出了笔记的分块。
+     * @throws SQLException 如果笔记不存在。
+     */
+    private int replaceChunkRange(Uri uri, SQLiteDatabase db, ContentValues values) {
+        long noteId = Long.parseLong(uri.getPathSegments().get(NotePad.Notes.NOTE_ID_PATH_POSITION));
+        String text = values == null ? null
+                : values.getAsString(NotePad.NoteChunks.COLUMN_NAME_TEXT);
+        String countParameter = uri.getQueryParameter(NotePad.NoteChunks.COUNT_QUERY_PARAMETER);
+        if (text == null || countParameter == null) {
+            throw new IllegalArgumentException("Chunk text and count required for " + uri);
+        }
+        int start = parseChunkStart(uri);
+        int count;
+        try {
+            count = Integer.parseInt(countParameter);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid chunk count in URI " + uri);
+        }
+
+        // 不超过一个分块的文本也作为一个分块存储；空文本表示删除这段分块
+        List<String> pieces = NoteText.splitBody(text, NotePad.NoteChunks.CHUNK_SIZE);
+        if (pieces.isEmpty() && text.length() > 0) {
+            pieces.add(text);
+        }
+
+        db.beginTransaction();
+        try {
+            long total = prepareChunkWrite(db, noteId);
+            if (total < 0) {
+                throw new SQLException("Failed to update chunks of " + uri);
+            }
+            if (count < 0 || start + count > total) {
+                throw new IllegalArgumentException("Chunk range out of bounds in " + uri);
+            }
+
+            String ofNote = NotePad.NoteChunks.COLUMN_NAME_NOTE_ID + " = " + noteId;
+            db.delete(NotePad.NoteChunks.TABLE_NAME, ofNote + " AND "
+                    + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + " >= " + start + " AND "
+                    + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + " < " + (start + count), null);
+
+            // 移动之后的分块。(note_id, seq) 是唯一的，SQLite 逐行检查约束，
+            // 所以先把序号移到负数区间，再移回新的位置。
+            int delta = pieces.size() - count;
+            if (delta != 0) {
+                db.execSQL("UPDATE " + NotePad.NoteChunks.TABLE_NAME + " SET "
+                        + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + " = -1 - ("
+                        + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + " + " + delta + ") WHERE "
+                        + ofNote + " AND " + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + " >= "
+                        + (start + count));
+                db.execSQL("UPDATE " + NotePad.NoteChunks.TABLE_NAME + " SET "
+                        + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + " = -1 - "
+                        + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + " WHERE " + ofNote + " AND "
+                        + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + " < 0");
+            }
+
+            ContentValues chunk = new ContentValues();
+            for (int i = 0; i < pieces.size(); i++) {
+                chunk.put(NotePad.NoteChunks.COLUMN_NAME_NOTE_ID, noteId);
+                chunk.put(NotePad.NoteChunks.COLUMN_NAME_SEQUENCE, start + i);
+                chunk.put(NotePad.NoteChunks.COLUMN_NAME_TEXT, pieces.get(i));
+                db.insert(NotePad.NoteChunks.TABLE_NAME, null, chunk);
+            }
+
+            chunksChanged(db, noteId);
+            db.setTransactionSuccessful();
+            return pieces.size();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * 删除笔记中从给定序号开始的所有分块。
+     *
+     * @return 删除的分块数量。
+     */
+    private int truncateChunks(SQLiteDatabase db, long noteId, int start) {
+        db.beginTransaction();
+        try {
+            int count = db.delete(NotePad.NoteChunks.TABLE_NAME,
+                    NotePad.NoteChunks.COLUMN_NAME_NOTE_ID + " = " + noteId + " AND "
+                            + NotePad.NoteChunks.COLUMN_NAME_SEQUENCE + " >= " + start,
+                    null);
+            if (count > 0) {
+                chunksChanged(db, noteId);
+            }
+            db.setTransactionSuccessful();
+            return count;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * 在直接写入分块之前调用。如果笔记内容还直接存放在 note 列中，先把它移到第 0 个分块，
+     * 这样分块写入总是作用于完整的内容。
+     *
+     * @return 笔记当前的分块数量；笔记不存在时返回 -1。
+     */
+    private static long prepareChunkWrite(SQLiteDatabase db, long noteId) {
+        long count = DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM "
+                + NotePad.NoteChunks.TABLE_NAME + " WHERE "
+                + NotePad.NoteChunks.COLUMN_NAME_NOTE_ID + " = " + noteId, null);
+        if (count > 0) {
+            return count;
+        }
+
+        // 没有分块的笔记内容不超过一个分块，可以安全地读进游标
+        Cursor c = db.query(NotePad.Notes.TABLE_NAME,
+                new String[] { NotePad.Notes.COLUMN_NAME_NOTE },
+                NotePad.Notes._ID + " = " + noteId, null, null, null, null);
+        try {
+            if (!c.moveToFirst()) {
+                return -1;
+            }
+            String inline = c.getString(0);
+            if (TextUtils.isEmpty(inline)) {
+                return 0;
+            }
+            ContentValues chunk = new ContentValues();
+            chunk.put(NotePad.NoteChunks.COLUMN_NAME_NOTE_ID, noteId);
+            chunk.put(NotePad.NoteChunks.COLUMN_NAME_SEQUENCE, 0);
+            chunk.put(NotePad.NoteChunks.COLUMN_NAME_TEXT, inline);
+            db.insert(NotePad.NoteChunks.TABLE_NAME, null, chunk);
+            return 1;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * 记录笔记的分块被直接修改，并更新其修改日期。批量操作期间，笔记行的同步推迟到事务提交前统一进行，
+     * 以免每写一个分块就重建一次全文索引。
+     */
+    private void chunksChanged(SQLiteDatabase db, long noteId) {
+        ContentValues values = new ContentValues();
+        values.put(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, System.currentTimeMillis());
+        db.update(NotePad.Notes.TABLE_NAME, values, NotePad.Notes._ID + " = " + noteId, null);
+
+        HashSet<Long> pending = mPendingChunkSyncs.get();
+        if (pending != null) {
+            pending.add(noteId);
+        } else {
+            syncChunkedNote(db, noteId);
+            updatePreview(db, noteId);
+        }
+    }
+
+    /**
+     * 同步批量操作期间分块发生变化的所有笔记。必须在批量事务提交之前调用。
+     */
+    private void syncPendingChunks(SQLiteDatabase db) {
+        HashSet<Long> pending = mPendingChunkSyncs.get();
+        if (pending == null) {
+            return;
+        }
+        for (long noteId : pending) {
+            syncChunkedNote(db, noteId);
+            updatePreview(db, noteId);
+        }
+        pending.clear();
+    }
+
+    /**
+     * 当客户端调用 {@link android.content.ContentResolver#bulkInsert(Uri, ContentValues[])} 时调用此方法。
+     * 在一个事务中插入所有行，并在事务提交后只发出一次变化通知。
+     * 如果任何一行插入失败，则整个批次回滚。
+     *
+     * @return 插入的行数。
+     * @throws IllegalArgumentException 如果传入的 URI 模式无效。
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        boolean outermost = beginBatch(db);
+        boolean successful = false;
+        try {
+            for (ContentValues row : values) {
+                insert(uri, row);
+            }
+            if (outermost) {
+                syncPendingChunks(db);
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            endBatch(db, outermost, successful, values.length);
+        }
+        return values.length;
+    }
+
+    /**
+     * 当客户端调用 {@link android.content.ContentResolver#applyBatch(String, ArrayList)} 时调用此方法。
+     * 在一个事务中执行所有操作，并在事务提交后只发出一次变化通知。
+     * 如果任何一个操作失败，则整个批次回滚。
+     *
+     * @return 每个操作的结果。
+     * @throws OperationApplicationException 如果某个操作的断言失败。
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        boolean outermost = beginBatch(db);
+        boolean successful = false;
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            if (outermost) {
+                syncPendingChunks(db);
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+            return results;
+        } finally {
+            endBatch(db, outermost, successful, operations.size());
+        }
+    }
+
+    /**
+     * 开始一个批量操作的事务，并暂停当前线程上的变化通知。
+     *
+     * @return 如果这是最外层的批量操作，则返回 true。
+     */
+    private boolean beginBatch(SQLiteDatabase db) {
+        boolean outermost = mApplyingBatch.get() == null;
+        mApplyingBatch.set(Boolean.TRUE);
+        if (outermost) {
+            mPendingChunkSyncs.set(new HashSet<Long>());
+        }
+        db.beginTransaction();
+        return outermost;
+    }
+
+    /**
+     * 结束批量操作的事务。最外层的批量操作结束时恢复变化通知，并在事务提交且数据有变化时
+     * 针对整个笔记目录发出一次合并后的通知。回滚的批量操作没有改变数据，不做检查点也不通知。
+     *
+     * @param successful 批量操作是否成功，即事务是否会提交
+     * @param operations 批量操作包含的行数或操作数，0 表示数据没有变化
+     */
+    private void endBatch(SQLiteDatabase db, boolean outermost, boolean successful,
+                          int operations) {
+        db.endTransaction();
+        if (outermost) {
+            mApplyingBatch.remove();
+            mPendingChunkSyncs.remove();
+            if (operations > 0) {
+                // 批量操作中的失效发生在事务结束之前，这期间读出的行可能已经进入缓存；
+                // 回滚时这些行是从未提交的数据中读出的，同样要丢弃
+                mRowCache.clear();
+            }
+            if (successful && operations > 0) {
+                mOpenHelper.checkpointAfterBatch(db, operations);
+                notifyChange(NotePad.Notes.CONTENT_URI);
+                notifyChange(NotePad.Notes.LIVE_FOLDER_URI);
+            }
+        }
+    }
+
+    /**
+     * 在写操作之后让缓存的行失效并通知观察者。针对单个笔记或其分块的写操作发出带变化类型的笔记 URI，
+     * 观察者可以只处理这一行；影响多个笔记的写操作通知传入的 URI。
+     *
+     * @param change 单个笔记的变化类型；分块的变化总是作为笔记的更新通知。
+     * @param titleChanged 笔记的标题或集合是否可能发生了变化，只有这时才需要通知活动文件夹。
+     */
+    private void notifyWrite(Uri uri, int match, String change, boolean titleChanged) {
+        switch (match) {
+            case NOTE_ID:
+                notifyNoteChange(Long.parseLong(
+                        uri.getPathSegments().get(NotePad.Notes.NOTE_ID_PATH_POSITION)),
+                        change, titleChanged);
+                break;
+
+            case NOTE_CHUNKS:
+            case NOTE_CHUNK_ID:
+                notifyNoteChange(Long.parseLong(
+                        uri.getPathSegments().get(NotePad.Notes.NOTE_ID_PATH_POSITION)),
+                        NotePad.Notes.CHANGE_UPDATE, false);
+                break;
+
+            default:
+                // 可能影响多条笔记，丢弃所有缓存的行
+                mRowCache.clear();
+                notifyChange(uri);
+                if (titleChanged) {
+                    notifyChange(NotePad.Notes.LIVE_FOLDER_URI);
+                }
+                break;
+        }
+    }
+
+    /**
+     * 通知观察者单个笔记发生了变化，例如 content://.../notes/5?change=update，并让它在行缓存中失效。
+     * 观察笔记目录的观察者同样会收到这个通知，因为它是目录 URI 的后代。
+     */
+    private void notifyNoteChange(long noteId, String change, boolean titleChanged) {
+        // 缓存的行必须在通知之前失效，否则观察者重新查询时会读到旧的行
+        mRowCache.remove(noteId);
+
+        notifyChange(ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, noteId)
+                .buildUpon()
+                .appendQueryParameter(NotePad.Notes.CHANGE_QUERY_PARAMETER, change)
+                .build());
+
+        // 活动文件夹只显示标题，仅修改内容的保存不需要让它刷新
+        if (titleChanged) {
+            notifyChange(NotePad.Notes.LIVE_FOLDER_URI);
+        }
+    }
+
+    /**
+     * 通知观察者数据发生了变化。批量操作期间的通知会被合并到批量操作结束时的一次通知中。
+     */
+    private void notifyChange(Uri uri) {
+        if (mApplyingBatch.get() != null) {
+            return;
+        }
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
     /**
      * 测试包可以调用此方法，以获取提供者的底层数据库的句柄，
      * 以便在数据库中插入测试数据。 测试用例类负责
@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * NotePadProvider 使用的笔记行缓存。按最近访问顺序保留最近读过的笔记行，总的估计大小不超过给定的字节数，
+ * 超出时丢弃最久未访问的行。所有方法都是同步的，可以在提供者的多个 binder 线程上调用。
+ * <p>
+ * 为了避免把写操作之前读出的旧行放进缓存，每次失效都会递增一个代数：调用者在查询数据库之前记录代数，
+ * 如果在此期间发生过失效，{@link #put} 会丢弃这一行。
+ */
+final class NoteRowCache {
+
+    /**
+     * 读取一条笔记的当前行，供缓存行构造的游标在 requery() 时使用。
+     */
+    interface RowLoader {
+        /**
+         * @return 笔记的当前行，列的顺序与缓存的列相同；笔记不存在时返回 null。
+         */
+        Object[] loadRow(long id);
+    }
+
+    // 每个缓存项和每个值的固定开销的估计值（字节）
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int VALUE_OVERHEAD = 16;
+
+    private final String[] mColumns;
+    private final long mMaxBytes;
+
+    // 按访问顺序排列，第一个是最久未访问的行
+    private final LinkedHashMap<Long, Object[]> mRows =
+            new LinkedHashMap<Long, Object[]>(16, 0.75f, true);
+
+    private long mBytes;
+    private long mGeneration;
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * @param columns 缓存的行包含的列，读入缓存的游标必须按这个顺序包含这些列
+     * @param maxBytes 所有行的估计大小之和的上限
+     */
+    NoteRowCache(String[] columns, long maxBytes) {
+        mColumns = columns;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * 把查询的投影转换为缓存行中的列位置。
+     *
+     * @param projection 查询的投影；null 表示全部列
+     * @return 每个投影列在缓存行中的位置；如果投影包含缓存行中没有的列，则返回 null。
+     */
+    int[] resolveProjection(String[] projection) {
+        if (projection == null) {
+            projection = mColumns;
+        }
+        int[] positions = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            positions[i] = -1;
+            for (int j = 0; j < mColumns.length; j++) {
+                if (mColumns[j].equals(projection[i])) {
+                    positions[i] = j;
+                    break;
+                }
+            }
+            if (positions[i] < 0) {
+                return null;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * @return 缓存的行；如果没有缓存，则返回 null。会更新命中或未命中计数。
+     */
+    synchronized Object[] get(long id) {
+        Object[] row = mRows.get(id);
+        if (row != null) {
+            mHits++;
+        } else {
+            mMisses++;
+        }
+        return row;
+    }
+
+    /**
+     * @return 当前的代数，在查询要放入缓存的行之前读取。
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * 缓存一行。如果从读取代数到现在发生过失效，或者这一行大得不值得缓存，则忽略它。
+     */
+    synchronized void put(long id, Object[] row, long generation) {
+        if (generation != mGeneration) {
+            return;
+        }
+        long size = sizeOf(row);
+        if (size > mMaxBytes / 4) {
+            return;
+        }
+
+        Object[] previous = mRows.put(id, row);
+        if (previous != null) {
+            mBytes -= sizeOf(previous);
+        }
+        mBytes += size;
+
+        Iterator<Map.Entry<Long, Object[]>> eldest = mRows.entrySet().iterator();
+        while (mBytes > mMaxBytes && eldest.hasNext()) {
+            mBytes -= sizeOf(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * 让一条笔记的缓存失效。
+     */
+    synchronized void remove(long id) {
+        mGeneration++;
+        Object[] previous = mRows.remove(id);
+        if (previous != null) {
+            mBytes -= sizeOf(previous);
+        }
+    }
+
+    /**
+     * 让所有缓存失效。
+     */
+    synchronized void clear() {
+        mGeneration++;
+        mRows.clear();
+        mBytes = 0;
+    }
+
+    synchronized long getHits() {
+        return mHits;
+    }
+
+    synchronized long getMisses() {
+        return mMisses;
+    }
+
+    synchronized int size() {
+        return mRows.size();
+    }
+
+    synchronized long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * 读取游标的当前行，列的顺序与构造时给定的列相同。
+     */
+    Object[] readRow(Cursor cursor) {
+        Object[] row = new Object[mColumns.length];
+        for (int i = 0; i < row.length; i++) {
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    row[i] = cursor.getLong(i);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    row[i] = cursor.getDouble(i);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    row[i] = cursor.getString(i);
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    row[i] = cursor.getBlob(i);
+                    break;
+                default:
+                    row[i] = null;
+                    break;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * 用缓存的行构造一个游标。游标的 requery() 通过 loader 重新读取这条笔记，
+     * 因此 managedQuery() 等依赖 requery() 刷新的调用者能看到之后的修改。
+     *
+     * @param projection 查询的投影；null 表示全部列
+     * @param positions {@link #resolveProjection} 返回的列位置
+     * @param id 笔记 ID
+     * @param row 缓存的行；null 表示笔记不存在，返回空游标
+     */
+    Cursor newCursor(String[] projection, int[] positions, long id, Object[] row,
+                     RowLoader loader) {
+        return new RowCursor(projection != null ? projection : mColumns, positions, id, row,
+                loader);
+    }
+
+    /**
+     * 估计一行占用的内存。字符串按每个字符两个字节计算。
+     */
+    private static long sizeOf(Object[] row) {
+        long size = ENTRY_OVERHEAD;
+        for (Object value : row) {
+            size += VALUE_OVERHEAD;
+            if (value instanceof String) {
+                size += 2L * ((String) value).length();
+            } else if (value instanceof byte[]) {
+                size += ((byte[]) value).length;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 由一条缓存的行构造的游标，最多包含一行。与 MatrixCursor 不同，requery() 会重新读取这条笔记，
+     * 行数据随之更新；笔记已被删除时游标变为空。
+     */
+    private static final class RowCursor extends AbstractCursor {
+        private final String[] mColumnNames;
+        private final int[] mPositions;
+        private final long mId;
+        private final RowLoader mLoader;
+        private Object[] mRow;
+
+        RowCursor(String[] columnNames, int[] positions, long id, Object[] row, RowLoader loader) {
+            mColumnNames = columnNames;
+            mPositions = positions;
+            mId = id;
+            mRow = row;
+            mLoader = loader;
+        }
+
+        @Override
+        public boolean requery() {
+            if (isClosed()) {
+                return false;
+            }
+            mRow = mLoader.loadRow(mId);
+            moveToPosition(-1);
+            return super.requery();
+        }
+
+        @Override
+        public int getCount() {
+            return mRow != null ? 1 : 0;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mColumnNames;
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return Cursor.FIELD_TYPE_NULL;
+            } else if (value instanceof byte[]) {
+                return Cursor.FIELD_TYPE_BLOB;
+            } else if (value instanceof Float || value instanceof Double) {
+                return Cursor.FIELD_TYPE_FLOAT;
+            } else if (value instanceof Number) {
+                return Cursor.FIELD_TYPE_INTEGER;
+            }
+            return Cursor.FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = get(column);
+            return value != null ? value.toString() : null;
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return 0;
+            } else if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            return Long.parseLong(value.toString());
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return 0;
+            } else if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return Double.parseDouble(value.toString());
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            return (byte[]) get(column);
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return get(column) == null;
+        }
+
+        private Object get(int column) {
+            if (column < 0 || column >= mPositions.length) {
+                throw new IllegalArgumentException("Requested column: " + column
+                        + ", # of columns: " + mPositions.length);
+            }
+            checkPosition();
+            return mRow[mPositions[column]];
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.OperationCanceledException;
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * NotesList 搜索框使用的异步搜索管道。
+ * 输入先经过防抖，只有在用户停止输入一小段时间后才发起查询；查询在后台线程上执行，
+ * 新的输入会取消仍在执行的旧查询，并且只有最新一次查询的结果会交给回调。
+ * 所有公开方法都必须在 UI 线程上调用，回调也在 UI 线程上执行。
+ */
+class NoteSearchPipeline {
+
+    // 用于日志记录和调试
+    private static final String TAG = "NoteSearchPipeline";
+
+    /**
+     * 最后一次按键之后等待多长时间才发起查询（毫秒）
+     */
+    private static final long DEBOUNCE_DELAY_MS = 200;
+
+    /**
+     * 最多显示的搜索结果数量
+     */
+    private static final int RESULT_LIMIT = 500;
+
+    /**
+     * 接收搜索结果的回调
+     */
+    interface Callback {
+        /**
+         * 最新一次查询完成时调用。回调取得游标的所有权，负责在不再需要时关闭它。
+         *
+         * @param query 产生此结果的搜索文本
+         * @param cursor 搜索结果，查询失败时为 null
+         */
+        void onSearchResult(String query, Cursor cursor);
+    }
+
+    private final ContentResolver mResolver;
+    private final String[] mProjection;
+    private final Callback mCallback;
+    private final Handler mHandler = new Handler();
+
+    /**
+     * 从按键到结果交付的延迟（"输入到结果"时间）
+     */
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+
+    // 等待防抖结束的查询，以及产生它的按键时间
+    private String mPendingQuery;
+    private long mPendingStartNanos;
+
+    // 每次提交新的输入时递增，用于丢弃过期的结果
+    private int mGeneration;
+
+    // 当前正在执行的查询任务
+    private SearchTask mRunningTask;
+
+    private final Runnable mDispatch = new Runnable() {
+        @Override
+        public void run() {
+            mRunningTask = new SearchTask(mGeneration, mPendingQuery, mPendingStartNanos);
+            mRunningTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+    };
+
+    NoteSearchPipeline(ContentResolver resolver, String[] projection, Callback callback) {
+        mResolver = resolver;
+        mProjection = projection;
+        mCallback = callback;
+    }
+
+    /**
+     * 提交新的搜索文本。任何等待中或执行中的旧查询都会被取消。
+     */
+    void submit(String query) {
+        cancel();
+        mPendingQuery = query;
+        mPendingStartNanos = System.nanoTime();
+        mHandler.postDelayed(mDispatch, DEBOUNCE_DELAY_MS);
+    }
+
+    /**
+     * 取消等待中和执行中的查询。被取消的查询不会调用回调。
+     */
+    void cancel() {
+        mGeneration++;
+        mHandler.removeCallbacks(mDispatch);
+        if (mRunningTask != null) {
+            mRunningTask.cancelQuery();
+            mRunningTask = null;
+        }
+    }
+
+    /**
+     * @return 从按键到结果交付的延迟分布。
+     */
+    LatencyHistogram getLatencyHistogram() {
+        return mLatency;
+    }
+
+    /**
+     * 在标题和内容的全文索引中搜索，结果由提供者按相关度排序。
+     */
+    private Cursor query(String query, CancellationSignal signal) {
+        Uri uri = NotePad.Notes.CONTENT_SEARCH_URI.buildUpon()
+                .appendQueryParameter(NotePad.Notes.SEARCH_QUERY_PARAMETER, query)
+                .appendQueryParameter(NotePad.Notes.LIMIT_QUERY_PARAMETER,
+                        Integer.toString(RESULT_LIMIT))
+                .build();
+
+        if (signal != null) {
+            return mResolver.query(uri, mProjection, null, null, null, signal);
+        }
+        return mResolver.query(uri, mProjection, null, null, null);
+    }
+
+    /**
+     * 在后台执行一次查询的任务
+     */
+    private class SearchTask extends AsyncTask<Void, Void, Cursor> {
+        private final int mTaskGeneration;
+        private final String mQuery;
+        private final long mStartNanos;
+
+        // 只有支持取消的平台版本上才会创建
+        private final CancellationSignal mSignal;
+
+        SearchTask(int generation, String query, long startNanos) {
+            mTaskGeneration = generation;
+            mQuery = query;
+            mStartNanos = startNanos;
+            mSignal = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                    ? new CancellationSignal() : null;
+        }
+
+        void cancelQuery() {
+            cancel(false);
+            if (mSignal != null) {
+                mSignal.cancel();
+            }
+        }
+
+        @Override
+        protected Cursor doInBackground(Void... params) {
+            try {
+                Cursor cursor = query(mQuery, mSignal);
+
+                // 游标是延迟填充的，在这里读取行数以确保查询真正在后台线程上执行
+                if (cursor != null) {
+                    cursor.getCount();
+                }
+                return cursor;
+            } catch (OperationCanceledException e) {
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Cursor cursor) {
+            // 如果在执行期间有了更新的输入，则丢弃这个结果
+            if (mTaskGeneration != mGeneration) {
+                if (cursor != null) {
+                    cursor.close();
+                }
+                return;
+            }
+
+            mRunningTask = null;
+            mLatency.recordNanos(System.nanoTime() - mStartNanos);
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, String.format(Locale.US,
+                        "search delivered, p50=%.1fms p99=%.1fms n=%d",
+                        mLatency.getPercentileMillis(50), mLatency.getPercentileMillis(99),
+                        mLatency.getCount()));
+            }
+            mCallback.onSearchResult(mQuery, cursor);
+        }
+
+        @Override
+        protected void onCancelled(Cursor cursor) {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.net.Uri;
+
+/**
+ * 很大的笔记中正在编辑的一段连续分块。编辑器只把这一段放进编辑框，保存时只替换这一段分块，
+ * 因此打开和保存的时间以及占用的内存与笔记的总长度无关。
+ * <p>
+ * 段的起点在创建时确定；段占用的分块数量在保存后会变化，只在写线程上读写
+ * （见 {@link NoteAutosaver}），因此相邻的段也在写线程上加载。
+ */
+final class NoteWindow {
+
+    /**
+     * 分块数量超过此值的笔记按段编辑
+     */
+    static final int LARGE_NOTE_CHUNKS = 16;
+
+    /**
+     * 每一段包含的分块数量
+     */
+    static final int WINDOW_CHUNKS = 4;
+
+    private static final String[] NOTE_PROJECTION = new String[] {
+            NotePad.Notes.COLUMN_NAME_CHUNK_COUNT
+    };
+
+    private final long mNoteId;
+    private final int mStart;
+    private final String mText;
+
+    // 笔记在加载这一段时的分块总数，以及这一段加载时的分块数量
+    private final int mTotalChunks;
+    private final int mLoadedCount;
+
+    // 这一段当前占用的分块数量。只在写线程上访问。
+    private int mCount;
+
+    private NoteWindow(long noteId, int start, int count, int totalChunks, String text) {
+        mNoteId = noteId;
+        mStart = start;
+        mCount = count;
+        mLoadedCount = count;
+        mTotalChunks = totalChunks;
+        mText = text;
+    }
+
+    /**
+     * 读取从 start 开始的一段分块。
+     *
+     * @return 读取的段；如果笔记不存在，或者 start 之后已经没有分块，则返回 null。
+     */
+    static NoteWindow load(ContentResolver resolver, long noteId, int start) {
+        Cursor c = resolver.query(
+                ContentUris.withAppendedId(NotePad.Notes.CONTENT_ID_URI_BASE, noteId),
+                NOTE_PROJECTION, null, null, null);
+        int totalChunks;
+        try {
+            if (c == null || !c.moveToFirst()) {
+                return null;
+            }
+            totalChunks = c.getInt(0);
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+
+        start = Math.max(0, start);
+        if (start > 0 && start >= totalChunks) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder(WINDOW_CHUNKS * NotePad.NoteChunks.CHUNK_SIZE);
+        int count = NoteBodyReader.readChunks(resolver, noteId, start, WINDOW_CHUNKS, text);
+        return new NoteWindow(noteId, start, count, totalChunks, text.toString());
+    }
+
+    /**
+     * @return 加载时这一段的文本。
+     */
+    String getText() {
+        return mText;
+    }
+
+    /**
+     * @return 这一段的第一个分块的序号。
+     */
+    int getStart() {
+        return mStart;
+    }
+
+    /**
+     * @return 加载时这一段之后的第一个分块的序号。
+     */
+    int getEnd() {
+        return mStart + mLoadedCount;
+    }
+
+    /**
+     * @return 笔记在加载这一段时的分块总数。
+     */
+    int getTotalChunks() {
+        return mTotalChunks;
+    }
+
+    /**
+     * @return 之前是否还有分块。
+     */
+    boolean hasPrevious() {
+        return mStart > 0;
+    }
+
+    /**
+     * @return 之后是否还有分块。
+     */
+    boolean hasNext() {
+        return mStart + mLoadedCount < mTotalChunks;
+    }
+
+    /**
+     * 在写线程上用编辑后的文本替换这一段分块。
+     *
+     * @return 提供者是否接受了这次写入；笔记已被删除时返回 false。
+     */
+    boolean write(ContentResolver resolver, String text) {
+        Uri uri = NotePad.NoteChunks.buildChunksUri(mNoteId).buildUpon()
+                .appendQueryParameter(NotePad.NoteChunks.START_QUERY_PARAMETER,
+                        Integer.toString(mStart))
+                .appendQueryParameter(NotePad.NoteChunks.COUNT_QUERY_PARAMETER,
+                        Integer.toString(mCount))
+                .build();
+        ContentValues values = new ContentValues();
+        values.put(NotePad.NoteChunks.COLUMN_NAME_TEXT, text);
+        try {
+            mCount = resolver.update(uri, values, null, null);
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 在写线程上读取下一段。必须在这一段的所有写入之后调用，这样才能知道这一段现在的结束位置。
+     *
+     * @return 下一段；如果笔记已被删除或者之后没有分块，则返回 null。
+     */
+    NoteWindow loadNext(ContentResolver resolver) {
+        return load(resolver, mNoteId, mStart + mCount);
+    }
+
+    /**
+     * 在写线程上读取上一段。这一段之前的分块不受这一段的写入影响。
+     *
+     * @return 上一段；如果笔记已被删除，则返回 null。
+     */
+    NoteWindow loadPrevious(ContentResolver resolver) {
+        return load(resolver, mNoteId, mStart - WINDOW_CHUNKS);
+    }
+}
@@ -17,16 +17,27 @@
 package com.example.android.notepad;
 
 import android.app.ListActivity;
+import android.app.LoaderManager;
 import android.content.ClipboardManager;
 import android.content.ClipData;
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.Context;
 import android.content.Intent;
+import android.content.Loader;
+import android.content.OperationApplicationException;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.RemoteException;
+import android.text.TextUtils;
 import android.util.Log;
+import android.view.ActionMode;
 import android.view.ContextMenu;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -35,22 +46,20 @@ import android.view.View;
 import android.view.ContextMenu.ContextMenuInfo;
 import android.widget.AdapterView;
 import android.widget.ListView;
-import android.widget.SimpleCursorAdapter;
-import android.widget.TextView;
 
 import android.widget.SearchView;
 
-
-import java.sql.Date;
-import java.text.SimpleDateFormat;
-import java.util.Locale;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * 显示笔记列表。如果启动此 Activity 的 Intent 中提供了 URI，则显示该 URI 的笔记，否则默认显示笔记提供者的内容。
- * 注意：此 Activity 中的内容提供者操作是在 UI 线程上执行的。这不是一个好的实践。这里只这样做是为了使代码更易于阅读。
- * 一个真实的应用程序应该使用 AsyncQueryHandler 或 AsyncTask 在单独的线程上异步执行操作。
+ * 列表通过 {@link NotesLoader} 在后台线程上加载，配置变化时由 LoaderManager 保留。
+ * 此 Activity 观察提供者的变化通知：单条笔记的插入、更新和删除直接应用到列表中，
+ * 只有无法直接应用的变化（例如批量操作）才会重新加载列表。
+ * 注意：删除笔记等其他提供者操作仍然在 UI 线程上执行。
  */
-public class NotesList extends ListActivity {
+public class NotesList extends ListActivity implements LoaderManager.LoaderCallbacks<Cursor> {
 
     // 用于日志记录和调试
     private static final String TAG = "NotesList";
@@ -61,25 +70,100 @@ public class NotesList extends ListActivity {
     private static final String[] PROJECTION = new String[]{
             NotePad.Notes._ID, // 0
             NotePad.Notes.COLUMN_NAME_TITLE, // 1
-            NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE // 2
+            NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE, // 2
+            NotePad.Notes.COLUMN_NAME_PREVIEW, // 3
+            NotePad.Notes.COLUMN_NAME_COLOR // 4
     };
 
     /**
-     * 标题列的索引
+     * 加载笔记列表的 Loader 的 ID
      */
-    private static final int COLUMN_INDEX_TITLE = 1;
+    private static final int LOADER_NOTES = 0;
+
+    /**
+     * 选择导入文件的请求码
+     */
+    private static final int REQUEST_IMPORT = 1;
 
     private SearchView searchView; // 声明 SearchView
-    private SimpleCursorAdapter adapter; // 声明适配器
+    private PagedNotesAdapter adapter; // 声明适配器
 
-    private Cursor searchNotes(String query) {
-        Uri uri = NotePad.Notes.CONTENT_URI; // 笔记的URI
-        String selection = NotePad.Notes.COLUMN_NAME_TITLE + " LIKE ?"; // 查询条件使用笔记标题
-        String[] selectionArgs = new String[]{"%" + query + "%"}; // 参数，`%` 用于模糊匹配
+    // Loader 加载的第一页笔记，由 Loader 管理，不能由此 Activity 关闭
+    private Cursor mListCursor;
 
-        // 执行查询
-        return getContentResolver().query(uri, PROJECTION, selection, selectionArgs, NotePad.Notes.DEFAULT_SORT_ORDER);
-    }
+    // 当前的搜索文本，没有搜索时为 null
+    private String mSearchQuery;
+
+    // 在后台执行搜索的管道
+    private NoteSearchPipeline mSearchPipeline;
+
+    // 多选模式的操作栏，不在多选模式时为 null
+    private ActionMode mSelectionMode;
+
+    // Loader 的第一页是否因为直接应用到列表的变化而过期
+    private boolean mListStale;
+
+    // Activity 是否已经被销毁，用于丢弃之后完成的后台查询
+    private boolean mDestroyed;
+
+    /**
+     * 观察笔记目录及其所有笔记的变化。提供者为单条笔记发出带变化类型的 URI，
+     * 例如 notes/5?change=update；其他通知没有变化类型，需要重新加载列表。
+     */
+    private final ContentObserver mNotesObserver = new ContentObserver(new Handler()) {
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            onNotesChanged(uri);
+        }
+    };
+
+    /**
+     * 多选模式的回调。多选模式下点击列表项会切换其选中状态，操作栏提供批量删除。
+     */
+    private final ActionMode.Callback mSelectionCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            getMenuInflater().inflate(R.menu.list_select_menu, menu);
+            getListView().setChoiceMode(ListView.CHOICE_MODE_MULTIPLE);
+            mode.setTitle(getString(R.string.title_selected, 0));
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            if (item.getItemId() == R.id.menu_delete_selected) {
+                long[] ids = getSelectedNoteIds();
+                if (ids.length > 0) {
+                    new DeleteNotesTask(getContentResolver(), getIntent().getData())
+                            .execute(ids);
+                }
+                mode.finish();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            ListView listView = getListView();
+            listView.clearChoices();
+            listView.setChoiceMode(ListView.CHOICE_MODE_NONE);
+
+            // 让列表项重新绑定，以清除选中状态的背景
+            adapter.notifyDataSetChanged();
+            mSelectionMode = null;
+        }
+    };
 
     /**
      * 当 Android 从头开始启动此 Activity 时调用 onCreate。
@@ -107,41 +191,28 @@ public class NotesList extends ListActivity {
          */
         getListView().setOnCreateContextMenuListener(this);
 
-        /* 执行一个管理查询，获取笔记数据。Activity 会自动管理 Cursor 的关闭和重新查询。
-         *
-         * 请注意，这里的查询操作是在 UI 线程上执行的，这在实际应用中可能不是最佳实践。在生产环境中，应该使用异步操作来避免阻塞 UI 线程。
-         */
-        Cursor cursor = managedQuery(
-                getIntent().getData(),            // 使用 Intent 中指定的 URI 或默认的笔记列表 URI。
-                PROJECTION,                       // 指定要查询的列，包括笔记的 ID 和标题。
-                null,                             // 不使用 WHERE 子句，查询所有笔记。
-                null,                             // 不使用 WHERE 子句，因此不需要 WHERE 子句的值。
-                NotePad.Notes.DEFAULT_SORT_ORDER  // 使用默认的排序方式，按修改日期降序排列。
-        );
-
-        /*
-         * 下面的两个数组定义了如何将 Cursor 中的数据列映射到 ListView 中的视图 ID。dataColumns 数组包含了要显示的列名，而 viewIDs 数组包含了对应的视图 ID。
-         * SimpleCursorAdapter 会根据这些映射关系将数据绑定到视图上。
-         */
-
-        // 要在视图中显示的游标列的名称，初始化为标题列和修改日期列
-        String[] dataColumns = {NotePad.Notes.COLUMN_NAME_TITLE, NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE};
+        // 为 ListView 创建适配器。第一页由 Loader 提供，之后的页面在滚动时由适配器按需加载。
+        adapter = new PagedNotesAdapter(this, getIntent().getData());
 
-        // 将要显示游标列的视图ID，初始化为 noteslist_item2.xml 中的 TextView
-        int[] viewIDs = {R.id.textTitle, R.id.textDate};
-
-        // 为 ListView 创建适配器。
-        adapter = new SimpleCursorAdapter(
-                this,                             // ListView 的上下文
-                R.layout.noteslist_item,          // 指向列表项的 XML 布局文件
-                cursor,                           // 从中获取项目的游标
-                dataColumns,                      // 要绑定到视图的列
-                viewIDs                           // 要绑定列的视图
-        );
-
-        // 将 ListView 的适配器设置为刚刚创建的游标适配器。
+        // 将 ListView 的适配器设置为刚刚创建的分页适配器。
         setListAdapter(adapter);
 
+        // 创建搜索管道，只有最新一次查询的结果会显示在列表中
+        mSearchPipeline = new NoteSearchPipeline(getContentResolver(), PROJECTION,
+                new NoteSearchPipeline.Callback() {
+                    @Override
+                    public void onSearchResult(String query, Cursor cursor) {
+                        if (cursor == null) {
+                            return;
+                        }
+                        // 如果搜索已被清除，则丢弃结果；否则将结果复制到适配器中
+                        if (mSearchQuery != null) {
+                            adapter.changeFixedRows(cursor);
+                        }
+                        cursor.close();
+                    }
+                });
+
         // 设置搜索视图
         searchView = (SearchView) findViewById(R.id.search_view);
         searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
@@ -154,45 +225,255 @@ public class NotesList extends ListActivity {
 
             @Override
             public boolean onQueryTextChange(String newText) {
-                // 根据输入文本搜索笔记
-                Cursor updatedCursor = searchNotes(newText);
-                adapter.changeCursor(updatedCursor); // 更新适配器的 Cursor
+                if (TextUtils.isEmpty(newText)) {
+                    // 搜索词为空时立即恢复显示全部笔记
+                    mSearchQuery = null;
+                    mSearchPipeline.cancel();
+                    adapter.changeFirstPage(mListCursor);
+                    if (mListStale) {
+                        // 搜索期间笔记发生过变化，先显示旧的第一页，加载完成后再替换
+                        reloadNotes();
+                    }
+                } else {
+                    // 根据输入文本在后台搜索笔记，结果通过回调交给适配器
+                    mSearchQuery = newText;
+                    mSearchPipeline.submit(newText);
+                }
                 return true;
             }
         });
 
-        // 设置自定义视图绑定器，用于修改时间格式显示。这里使用内部类来实现SimpleCursorAdapter.ViewBinder接口。
-        adapter.setViewBinder(new SimpleCursorAdapter.ViewBinder() {
-            @Override
-            public boolean setViewValue(View view, Cursor cursor, int columnIndex) {
-                // 检查视图是否是TextView类型，因为我们要修改的是文本显示。
-                if (view instanceof TextView) {
-                    // 获取当前列的列名，以便判断是否需要特殊处理。
-                    String columnName = cursor.getColumnName(columnIndex);
+        // 在后台加载笔记列表。如果 Activity 是因为配置变化而重建的，则直接复用已加载的结果。
+        getLoaderManager().initLoader(LOADER_NOTES, null, this);
+
+        // 观察笔记目录下所有 URI 的变化，包括单条笔记的 URI
+        getContentResolver().registerContentObserver(getIntent().getData(), true,
+                mNotesObserver);
+    }
+
+    /**
+     * 提供者发出变化通知时调用。
+     *
+     * @param uri 发生变化的 URI；旧版本的系统不提供 URI，此时为 null。
+     */
+    private void onNotesChanged(Uri uri) {
+        String change = uri != null
+                ? uri.getQueryParameter(NotePad.Notes.CHANGE_QUERY_PARAMETER) : null;
+        if (change == null) {
+            // 不知道哪些笔记发生了变化，重新加载列表
+            reloadNotes();
+            return;
+        }
 
-                    // 判断当前列是否是修改日期列（假设NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE是修改日期的列名）。
-                    if (columnName.equals(NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE)) {
-                        // 从Cursor中获取修改日期的时间戳（毫秒为单位）。
-                        long dateInMillis = cursor.getLong(columnIndex);
+        if (mSearchQuery != null) {
+            // 正在显示的搜索结果可能已经过期，重新执行当前搜索；第一页在退出搜索时重新加载
+            mListStale = true;
+            mSearchPipeline.submit(mSearchQuery);
+            return;
+        }
+
+        long noteId = ContentUris.parseId(uri);
+        if (NotePad.Notes.CHANGE_DELETE.equals(change)) {
+            if (adapter.applyDelete(noteId)) {
+                mListStale = true;
+            } else {
+                reloadNotes();
+            }
+        } else {
+            // 插入和更新需要笔记的新标题和修改日期，在后台只查询这一行
+            new FetchNoteTask(noteId, NotePad.Notes.CHANGE_INSERT.equals(change)).execute(
+                    ContentUris.withAppendedId(getIntent().getData(), noteId));
+        }
+    }
 
-                        // 将视图转换为TextView，以便设置文本。
-                        TextView textView = (TextView) view;
+    /**
+     * 让 Loader 重新加载第一页。如果 Activity 已停止，则在重新启动时加载。
+     */
+    private void reloadNotes() {
+        mListStale = false;
+        Loader<Cursor> loader = getLoaderManager().getLoader(LOADER_NOTES);
+        if (loader != null) {
+            loader.onContentChanged();
+        }
+    }
 
-                        // 创建一个SimpleDateFormat对象，用于格式化日期。这里使用"yyyy-MM-dd HH:mm:ss"格式，并指定默认语言环境。
-                        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+    /**
+     * 在后台查询一条插入或更新后的笔记，然后把它直接应用到列表中。
+     */
+    private class FetchNoteTask extends AsyncTask<Uri, Void, Cursor> {
+        private final long mNoteId;
+        private final boolean mInserted;
 
-                        // 使用SimpleDateFormat格式化时间戳，并将结果设置为TextView的文本。
-                        textView.setText(dateFormat.format(new Date(dateInMillis)));
+        FetchNoteTask(long noteId, boolean inserted) {
+            mNoteId = noteId;
+            mInserted = inserted;
+        }
 
-                        // 返回true表示我们已经处理了该视图的值，不需要进一步处理。
-                        return true;
-                    }
+        @Override
+        protected Cursor doInBackground(Uri... params) {
+            Cursor cursor = getContentResolver().query(params[0], PROJECTION, null, null, null);
+            if (cursor != null) {
+                cursor.getCount();
+            }
+            return cursor;
+        }
+
+        @Override
+        protected void onPostExecute(Cursor cursor) {
+            if (cursor == null) {
+                return;
+            }
+            try {
+                if (mDestroyed || mSearchQuery != null) {
+                    mListStale = true;
+                    return;
+                }
+                boolean applied;
+                if (cursor.moveToFirst()) {
+                    applied = adapter.applyUpsert(mNoteId, cursor.getString(1),
+                            cursor.getLong(2), cursor.getString(3), cursor.getInt(4), mInserted);
+                } else {
+                    // 查询之前笔记已经被删除
+                    applied = adapter.applyDelete(mNoteId);
                 }
+                if (applied) {
+                    mListStale = true;
+                } else {
+                    reloadNotes();
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
 
-                // 如果视图不是TextView或者当前列不是修改日期列，返回false表示我们没有处理该视图的值，可能需要其他处理。
-                return false;
+    /**
+     * 创建在后台线程上查询笔记列表第一页的 Loader。
+     */
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        Uri firstPageUri = getIntent().getData().buildUpon()
+                .appendQueryParameter(NotePad.Notes.LIMIT_QUERY_PARAMETER,
+                        Integer.toString(PagedNotesAdapter.PAGE_SIZE))
+                .build();
+
+        return new NotesLoader(
+                this,
+                firstPageUri,                     // 使用 Intent 中指定的 URI 或默认的笔记列表 URI，只取第一页。
+                PROJECTION,                       // 指定要查询的列，包括笔记的 ID 和标题。
+                NotePad.Notes.PAGED_SORT_ORDER    // 按修改日期降序排列，与后续页面的键集分页一致。
+        );
+    }
+
+    /**
+     * 笔记列表加载完成（或因内容变化而重新加载完成）时调用。
+     */
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        mListCursor = data;
+        mListStale = false;
+
+        if (mSearchQuery == null) {
+            // 适配器复制第一页的数据并丢弃旧的页面；旧游标由 Loader 负责关闭
+            adapter.changeFirstPage(data);
+        } else {
+            // 内容发生了变化，正在显示的搜索结果可能已经过期，重新执行当前搜索
+            mSearchPipeline.submit(mSearchQuery);
+        }
+    }
+
+    /**
+     * Loader 即将关闭其游标时调用，此后不能再使用该游标。适配器持有的是复制出的数据，因此不受影响。
+     */
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        mListCursor = null;
+    }
+
+    /**
+     * 在多选模式的操作栏中显示已选中的便签数量。
+     */
+    private void updateSelectionTitle() {
+        if (mSelectionMode != null) {
+            mSelectionMode.setTitle(getString(R.string.title_selected,
+                    getListView().getCheckedItemCount()));
+        }
+    }
+
+    /**
+     * @return 多选模式下所有选中的、已加载的便签的 ID。
+     */
+    private long[] getSelectedNoteIds() {
+        // 适配器的 ID 是稳定的，列表按 ID 记录选中状态，即使选中期间列表重新加载也不会错位
+        long[] checked = getListView().getCheckedItemIds();
+        long[] ids = new long[checked.length];
+        int count = 0;
+        for (long id : checked) {
+            if (id >= 0) {
+                ids[count++] = id;
             }
-        });
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * 在后台通过一个批量操作删除多条便签。提供者在一个事务中执行所有删除，
+     * 并且只发出一次变化通知，因此列表只会重新加载一次。
+     */
+    private static class DeleteNotesTask extends AsyncTask<long[], Void, Void> {
+        private final ContentResolver mResolver;
+        private final Uri mNotesUri;
+
+        DeleteNotesTask(ContentResolver resolver, Uri notesUri) {
+            mResolver = resolver;
+            mNotesUri = notesUri;
+        }
+
+        @Override
+        protected Void doInBackground(long[]... params) {
+            ArrayList<ContentProviderOperation> operations =
+                    new ArrayList<ContentProviderOperation>();
+            for (long id : params[0]) {
+                operations.add(ContentProviderOperation
+                        .newDelete(ContentUris.withAppendedId(mNotesUri, id))
+                        .build());
+            }
+
+            try {
+                mResolver.applyBatch(NotePad.AUTHORITY, operations);
+            } catch (RemoteException e) {
+                Log.e(TAG, "Failed to delete notes", e);
+            } catch (OperationApplicationException e) {
+                Log.e(TAG, "Failed to delete notes", e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 当用户选择了要导入的文件时调用。
+     */
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode == REQUEST_IMPORT) {
+            if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                NoteImportFragment.start(getFragmentManager(), getIntent().getData(),
+                        data.getData());
+            }
+            return;
+        }
+        super.onActivityResult(requestCode, resultCode, data);
+    }
+
+    /**
+     * 当 Activity 被销毁时调用。取消仍在执行的搜索。
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mDestroyed = true;
+        getContentResolver().unregisterContentObserver(mNotesObserver);
+        mSearchPipeline.cancel();
     }
 
     /**
@@ -319,6 +600,19 @@ public class NotesList extends ListActivity {
                  */
                 startActivity(new Intent(Intent.ACTION_PASTE, getIntent().getData()));
                 return true;
+            case R.id.menu_select:
+                // 进入多选模式，以便批量删除便签
+                if (mSelectionMode == null) {
+                    mSelectionMode = startActionMode(mSelectionCallback);
+                }
+                return true;
+            case R.id.menu_import:
+                // 让用户选择要导入的 NDJSON 文件或 zip 归档
+                Intent pick = new Intent(Intent.ACTION_GET_CONTENT);
+                pick.setType("*/*");
+                pick.addCategory(Intent.CATEGORY_OPENABLE);
+                startActivityForResult(pick, REQUEST_IMPORT);
+                return true;
             default:
                 return super.onOptionsItemSelected(item);
         }
@@ -353,14 +647,12 @@ public class NotesList extends ListActivity {
         }
 
         /*
-         * 获取与所选位置项相关的数据。getItem() 返回
-         * ListView 的后备适配器与该项关联的内容。在 NotesList 中，适配器为每个笔记
-         * 都关联了所有数据。因此，getItem() 返回该数据作为游标。
+         * 获取所选位置笔记的标题。如果该位置所在的页面还没有加载完成，则标题为 null。
          */
-        Cursor cursor = (Cursor) getListAdapter().getItem(info.position);
+        String title = adapter.getTitle(info.position);
 
-        // 如果游标为空，那么出于某种原因适配器无法从提供者获取数据，因此返回 null 给调用者。
-        if (cursor == null) {
+        // 如果标题为空，那么出于某种原因适配器还没有从提供者获取数据，因此返回给调用者。
+        if (title == null) {
             // 出于某种原因，请求的项目不可用，不做任何操作
             return;
         }
@@ -370,7 +662,7 @@ public class NotesList extends ListActivity {
         inflater.inflate(R.menu.list_context_menu, menu);
 
         // 设置菜单头为所选笔记的标题。
-        menu.setHeaderTitle(cursor.getString(COLUMN_INDEX_TITLE));
+        menu.setHeaderTitle(title);
 
         // 向菜单项附加其他可以处理它的活动。
         // 这会查询系统以获取实现 ALTERNATIVE_ACTION 的所有活动，为每个找到的活动添加菜单项。
@@ -478,6 +770,17 @@ public class NotesList extends ListActivity {
     @Override
     protected void onListItemClick(ListView l, View v, int position, long id) {
 
+        // 多选模式下，点击只切换选中状态（ListView 已经处理），这里只更新计数
+        if (mSelectionMode != null) {
+            updateSelectionTitle();
+            return;
+        }
+
+        // 该位置所在的页面还没有加载完成
+        if (id < 0) {
+            return;
+        }
+
         // 根据传入 URI 和行 ID 构造一个新 URI
         Uri uri = ContentUris.withAppendedId(getIntent().getData(), id);
 
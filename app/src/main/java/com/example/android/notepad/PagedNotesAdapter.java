@@ -0,0 +1,822 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.drawable.GradientDrawable;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.text.TextUtils;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import java.util.Arrays;
+
+/**
+ * 按页加载笔记列表的适配器。
+ * 第一页由调用者（NotesList 的 Loader）提供，之后的页面在用户滚动到附近时通过
+ * 键集分页（{@link NotePad.Notes#BEFORE_MODIFIED_QUERY_PARAMETER}）在后台加载。
+ * 行数据从游标复制到紧凑的数组中，游标随即关闭；内存中最多保留 {@link #MAX_RESIDENT_PAGES} 页，
+ * 离当前位置最远的页面会被丢弃，需要时再重新加载。列表数据变化时保留内存中的页面窗口，
+ * 这些页面按顺序重新加载，每一页以刚加载的前一页为键集起点；前一页不在内存中时按位置查询。
+ * 行 ID 是稳定的笔记 ID。每个行视图通过 {@link NoteRowBinder} 记住它显示的数据，重新绑定时只更新
+ * 发生变化的视图，因此一次内容变化通知不会让所有可见行都重新布局。
+ * 单条笔记的插入、更新和删除通过 {@link #applyUpsert} 和 {@link #applyDelete} 应用到内存中的数据：
+ * 笔记留在原来的页面中时直接修改这一页，否则只重新加载受影响的内存页面，不会重新加载整个列表。
+ * 所有方法都必须在 UI 线程上调用。
+ */
+class PagedNotesAdapter extends BaseAdapter {
+
+    /**
+     * 每页的行数
+     */
+    static final int PAGE_SIZE = 100;
+
+    /**
+     * 内存中最多保留的页数
+     */
+    private static final int MAX_RESIDENT_PAGES = 5;
+
+    /**
+     * 距离已加载区域的边界还剩多少行时开始预取相邻的页面
+     */
+    private static final int PREFETCH_DISTANCE = 20;
+
+    /**
+     * 加载页面时使用的投影
+     */
+    private static final String[] PROJECTION = new String[] {
+            NotePad.Notes._ID,
+            NotePad.Notes.COLUMN_NAME_TITLE,
+            NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE,
+            NotePad.Notes.COLUMN_NAME_PREVIEW,
+            NotePad.Notes.COLUMN_NAME_COLOR
+    };
+
+    /**
+     * 一页笔记的行数据
+     */
+    private static final class Page {
+        final long[] ids;
+        final String[] titles;
+        final long[] modified;
+        final String[] previews;
+        final int[] colors;
+        final int size;
+
+        Page(Cursor cursor, int maxRows) {
+            // 列索引对每个游标只解析一次
+            int idColumn = cursor.getColumnIndexOrThrow(NotePad.Notes._ID);
+            int titleColumn = cursor.getColumnIndexOrThrow(NotePad.Notes.COLUMN_NAME_TITLE);
+            int modifiedColumn = cursor.getColumnIndexOrThrow(
+                    NotePad.Notes.COLUMN_NAME_MODIFICATION_DATE);
+            int previewColumn = cursor.getColumnIndexOrThrow(NotePad.Notes.COLUMN_NAME_PREVIEW);
+            int colorColumn = cursor.getColumnIndexOrThrow(NotePad.Notes.COLUMN_NAME_COLOR);
+
+            int count = Math.min(cursor.getCount(), maxRows);
+            ids = new long[count];
+            titles = new String[count];
+            modified = new long[count];
+            previews = new String[count];
+            colors = new int[count];
+
+            int row = 0;
+            while (row < count && cursor.moveToNext()) {
+                ids[row] = cursor.getLong(idColumn);
+                titles[row] = cursor.getString(titleColumn);
+                modified[row] = cursor.getLong(modifiedColumn);
+                previews[row] = cursor.getString(previewColumn);
+                colors[row] = cursor.getInt(colorColumn);
+                row++;
+            }
+            size = row;
+        }
+
+        Page(long[] ids, String[] titles, long[] modified, String[] previews, int[] colors,
+             int size) {
+            this.ids = ids;
+            this.titles = titles;
+            this.modified = modified;
+            this.previews = previews;
+            this.colors = colors;
+            this.size = size;
+        }
+
+        /**
+         * @return 给定笔记所在的行；如果页面中没有这条笔记，则返回 -1。
+         */
+        int indexOf(long id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return 两个页面是否按相同顺序包含相同的笔记（不比较标题和修改日期）。
+         */
+        boolean hasSameIds(Page other) {
+            if (size != other.size) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (ids[i] != other.ids[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 行视图及其当前显示的数据。findViewById 只在创建视图时调用一次。
+     */
+    private static final class ViewHolder extends NoteRowBinder {
+        final GradientDrawable card;
+        final TextView title;
+        final TextView preview;
+        final TextView date;
+
+        ViewHolder(View view) {
+            // 卡片背景是所有行共享的形状，修改颜色之前先让这一行拥有自己的副本
+            card = (GradientDrawable) view.findViewById(R.id.card).getBackground().mutate();
+            title = (TextView) view.findViewById(R.id.textTitle);
+            preview = (TextView) view.findViewById(R.id.textPreview);
+            date = (TextView) view.findViewById(R.id.textDate);
+        }
+
+        @Override
+        protected void onColorChanged(int color) {
+            // 颜色来自同一个游标中的颜色列，不需要额外的查询
+            card.setColor(color);
+        }
+
+        @Override
+        protected void onTitleChanged(String text) {
+            title.setText(text);
+        }
+
+        @Override
+        protected void onPreviewChanged(String text) {
+            // 预览由提供者在写入时生成，这里不做任何字符串处理；没有内容时隐藏预览
+            preview.setText(text);
+            preview.setVisibility(TextUtils.isEmpty(text) ? View.GONE : View.VISIBLE);
+        }
+
+        @Override
+        protected void onDateChanged(String text) {
+            date.setText(text);
+        }
+    }
+
+    private final ContentResolver mResolver;
+    private final LayoutInflater mInflater;
+    private final Uri mUri;
+
+    // 修改日期的格式化器，只在 UI 线程上使用
+    private final NoteDateFormatter mDateFormatter = new NoteDateFormatter();
+
+    // 没有选择颜色的笔记使用的卡片颜色
+    private final int mDefaultColor;
+
+    // 已加载到内存中的页面，以页号为键
+    private final SparseArray<Page> mPages = new SparseArray<Page>();
+
+    // 正在加载的页面
+    private final SparseArray<PageTask> mLoading = new SparseArray<PageTask>();
+
+    // 第 k 页的键集起点，即第 k - 1 页最后一行的修改日期和 ID（第 0 页没有起点）
+    private long[] mPageStartModified = new long[16];
+    private long[] mPageStartId = new long[16];
+
+    // 第 k 页的键集起点是否仍然与当前数据一致。数据变化之后，变化位置之后的起点都失效，
+    // 这些页面按位置（OFFSET）加载，直到前一页重新加载后得到新的起点
+    private boolean[] mPageStartValid = new boolean[16];
+
+    // 内容可能已经过期、等待重新加载的页面，按页号从小到大逐页重新加载
+    private final SparseBooleanArray mStalePages = new SparseBooleanArray();
+
+    // 目前已知的页数和行数
+    private int mPageCount;
+    private int mCount;
+
+    // 是否可能还有更多页面；搜索结果等固定的行集合不分页
+    private boolean mHasMore;
+    private boolean mPagingEnabled;
+
+    // 最近一次请求的位置，用于决定丢弃哪些页面
+    private int mLastPosition;
+
+    /**
+     * @param uri 笔记目录的 URI，分页参数会追加到此 URI 上
+     */
+    PagedNotesAdapter(Context context, Uri uri) {
+        mResolver = context.getContentResolver();
+        mInflater = LayoutInflater.from(context);
+        mUri = uri;
+        mDefaultColor = context.getResources().getColor(R.color.LightPink);
+    }
+
+    /**
+     * 用新的第一页替换第一页的数据。如果已经在分页显示笔记，则保留内存中的其他页面和滚动位置，
+     * 并按顺序重新加载它们；否则丢弃全部数据，后续页面按需加载。游标仍归调用者所有。
+     *
+     * @param cursor 按 {@link NotePad.Notes#PAGED_SORT_ORDER} 排序的第一页，可以为 null
+     */
+    void changeFirstPage(Cursor cursor) {
+        Page page = null;
+        if (cursor != null) {
+            cursor.moveToPosition(-1);
+            page = new Page(cursor, PAGE_SIZE);
+        }
+
+        if (page == null || !mPagingEnabled) {
+            reset();
+            if (page != null) {
+                mPagingEnabled = true;
+                installPage(0, page);
+            }
+            notifyDataSetChanged();
+            return;
+        }
+
+        // 如果只加载了第一页，并且新的第一页按相同顺序包含相同的笔记，则就地替换，
+        // 不需要重新加载任何页面。行视图会跳过内容没有变化的行。
+        Page current = mPages.get(0);
+        if (current != null && mPageCount == 1 && mLoading.size() == 0
+                && page.hasSameIds(current)) {
+            installPage(0, page);
+            notifyDataSetChanged();
+            return;
+        }
+
+        // 不知道哪些笔记发生了变化：第一页之后的页面都可能已经移动
+        invalidateFrom(0);
+        mStalePages.delete(0);
+        installPage(0, page);
+        refreshStalePages();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * 用一组固定的行替换全部数据，例如搜索结果。这些行不会被分页或丢弃。游标仍归调用者所有。
+     */
+    void changeFixedRows(Cursor cursor) {
+        reset();
+        if (cursor != null) {
+            cursor.moveToPosition(-1);
+            int pageNumber = 0;
+            Page page;
+            do {
+                page = new Page(cursor, PAGE_SIZE);
+                if (page.size > 0) {
+                    installPage(pageNumber++, page);
+                }
+            } while (page.size == PAGE_SIZE);
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * 把一条插入或更新后的笔记应用到内存中的数据，笔记按排序顺序移动到新的位置。
+     * 笔记留在它所在的页面中，或者落在最后一页时，直接修改这一页；否则从受影响的第一页开始
+     * 重新加载内存中的页面，页面窗口和滚动位置保持不变。与数据库的大小无关。
+     *
+     * @param inserted 是否是新插入的笔记
+     * @return 是否已经应用；返回 false 时（例如正在显示搜索结果）调用者应当重新加载列表。
+     */
+    boolean applyUpsert(long id, String title, long modified, String preview, int color,
+                        boolean inserted) {
+        if (!mPagingEnabled) {
+            return false;
+        }
+        int pageNumber = findResidentPage(id);
+        int target = pageForKey(modified, id);
+        boolean newToList = pageNumber < 0 && (inserted || isComplete());
+
+        if (pageNumber >= 0) {
+            Page page = mPages.get(pageNumber);
+            int row = page.indexOf(id);
+            if (target == pageNumber && fitsInPage(pageNumber, page, row, modified, id)) {
+                // 笔记留在原来的页面中，其他页面不受影响
+                installPage(pageNumber, mergeRow(page, row, id, title, modified, preview, color));
+                notifyDataSetChanged();
+                return true;
+            }
+        } else if (newToList && isLastPage(target)) {
+            Page page = mPages.get(target);
+            if (page != null && page.size < PAGE_SIZE) {
+                // 新笔记落在最后一页，而且这一页还放得下
+                installPage(target, mergeRow(page, -1, id, title, modified, preview, color));
+                notifyDataSetChanged();
+                return true;
+            }
+        }
+
+        // 笔记跨页移动：从它原来的位置和新的位置中靠前的一页开始，后面的行都移动了一位。
+        // 原来的位置不在内存中时，它至少在第一个不在内存中的页面里
+        int fromPage;
+        if (pageNumber >= 0) {
+            fromPage = Math.min(pageNumber, target);
+        } else if (newToList) {
+            fromPage = target;
+            mCount++;
+        } else {
+            fromPage = Math.min(target, firstMissingPage());
+        }
+        invalidateFrom(fromPage);
+        refreshStalePages();
+        notifyDataSetChanged();
+        return true;
+    }
+
+    /**
+     * 从内存中的数据删除一条笔记。笔记在最后一页时直接删除这一行；否则从它所在的页面开始
+     * 重新加载内存中的页面，页面窗口和滚动位置保持不变。
+     *
+     * @return 是否已经应用；返回 false 时调用者应当重新加载列表。
+     */
+    boolean applyDelete(long id) {
+        if (!mPagingEnabled) {
+            return false;
+        }
+        int pageNumber = findResidentPage(id);
+        if (pageNumber < 0) {
+            if (isComplete()) {
+                // 笔记不在列表中
+                return true;
+            }
+            // 笔记在某个不在内存中的页面里，之后的行都前移了一位
+            mCount = Math.max(0, mCount - 1);
+            invalidateFrom(firstMissingPage());
+            refreshStalePages();
+        } else if (isLastPage(pageNumber)) {
+            Page page = mPages.get(pageNumber);
+            installPage(pageNumber, removeRow(page, page.indexOf(id)));
+        } else {
+            mCount--;
+            invalidateFrom(pageNumber);
+            refreshStalePages();
+        }
+        notifyDataSetChanged();
+        return true;
+    }
+
+    /**
+     * @return 内存中包含给定笔记的页号；如果没有，则返回 -1。
+     */
+    private int findResidentPage(long id) {
+        for (int i = 0; i < mPages.size(); i++) {
+            if (mPages.valueAt(i).indexOf(id) >= 0) {
+                return mPages.keyAt(i);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 根据有效的键集起点找出给定的键所在的页面。遇到失效的起点时停止，因此返回值是一个下限：
+     * 键在这一页或者之后的页面中。
+     */
+    private int pageForKey(long modified, long id) {
+        int pageNumber = 0;
+        for (int p = 1; p < mPageCount && p < mPageStartValid.length && mPageStartValid[p]; p++) {
+            if (!sortsBefore(mPageStartModified[p], mPageStartId[p], modified, id)) {
+                break;
+            }
+            pageNumber = p;
+        }
+        return pageNumber;
+    }
+
+    /**
+     * @return 更新后的键是否仍然属于它所在的页面：最后一页总是可以；其他页面中，
+     * 它必须排在这一页中除它以外的最后一行之前，以免越过下一页的第一行。
+     */
+    private boolean fitsInPage(int pageNumber, Page page, int row, long modified, long id) {
+        if (isLastPage(pageNumber)) {
+            return true;
+        }
+        int last = row == page.size - 1 ? page.size - 2 : page.size - 1;
+        return last >= 0 && sortsBefore(modified, id, page.modified[last], page.ids[last]);
+    }
+
+    /**
+     * @return 给定的页面是否是列表的最后一页，即它之后没有更多笔记。
+     */
+    private boolean isLastPage(int pageNumber) {
+        return pageNumber == mPageCount - 1 && !mHasMore;
+    }
+
+    /**
+     * @return 是否全部笔记都在内存中，并且没有过期或正在加载的页面。
+     */
+    private boolean isComplete() {
+        return !mHasMore && mPages.size() == mPageCount && mStalePages.size() == 0
+                && mLoading.size() == 0;
+    }
+
+    /**
+     * @return 第一个不在内存中的页号；全部页面都在内存中时返回页数。
+     */
+    private int firstMissingPage() {
+        int pageNumber = 0;
+        while (pageNumber < mPageCount && mPages.get(pageNumber) != null) {
+            pageNumber++;
+        }
+        return pageNumber;
+    }
+
+    /**
+     * @return 按 {@link NotePad.Notes#PAGED_SORT_ORDER}（修改日期降序，相同时 ID 降序），
+     * 第一个键是否排在第二个键之前。
+     */
+    private static boolean sortsBefore(long modified, long id, long otherModified, long otherId) {
+        return modified > otherModified || (modified == otherModified && id > otherId);
+    }
+
+    /**
+     * 返回一个新的页面：删除 existing 行（小于 0 时不删除），并把给定的笔记插入到它的排序位置。
+     */
+    private static Page mergeRow(Page page, int existing, long id, String title, long modified,
+                                 String preview, int color) {
+        int size = existing < 0 ? page.size + 1 : page.size;
+        long[] ids = new long[size];
+        String[] titles = new String[size];
+        long[] modifiedDates = new long[size];
+        String[] previews = new String[size];
+        int[] colors = new int[size];
+        int row = 0;
+        boolean placed = false;
+        for (int i = 0; i < page.size; i++) {
+            if (i == existing) {
+                continue;
+            }
+            if (!placed && sortsBefore(modified, id, page.modified[i], page.ids[i])) {
+                ids[row] = id;
+                titles[row] = title;
+                modifiedDates[row] = modified;
+                previews[row] = preview;
+                colors[row] = color;
+                row++;
+                placed = true;
+            }
+            ids[row] = page.ids[i];
+            titles[row] = page.titles[i];
+            modifiedDates[row] = page.modified[i];
+            previews[row] = page.previews[i];
+            colors[row] = page.colors[i];
+            row++;
+        }
+        if (!placed) {
+            ids[row] = id;
+            titles[row] = title;
+            modifiedDates[row] = modified;
+            previews[row] = preview;
+            colors[row] = color;
+        }
+        return new Page(ids, titles, modifiedDates, previews, colors, size);
+    }
+
+    /**
+     * 返回一个删除了 existing 行的新页面。
+     */
+    private static Page removeRow(Page page, int existing) {
+        int size = page.size - 1;
+        long[] ids = new long[size];
+        String[] titles = new String[size];
+        long[] modifiedDates = new long[size];
+        String[] previews = new String[size];
+        int[] colors = new int[size];
+        System.arraycopy(page.ids, 0, ids, 0, existing);
+        System.arraycopy(page.titles, 0, titles, 0, existing);
+        System.arraycopy(page.modified, 0, modifiedDates, 0, existing);
+        System.arraycopy(page.previews, 0, previews, 0, existing);
+        System.arraycopy(page.colors, 0, colors, 0, existing);
+        System.arraycopy(page.ids, existing + 1, ids, existing, size - existing);
+        System.arraycopy(page.titles, existing + 1, titles, existing, size - existing);
+        System.arraycopy(page.modified, existing + 1, modifiedDates, existing, size - existing);
+        System.arraycopy(page.previews, existing + 1, previews, existing, size - existing);
+        System.arraycopy(page.colors, existing + 1, colors, existing, size - existing);
+        return new Page(ids, titles, modifiedDates, previews, colors, size);
+    }
+
+    /**
+     * 丢弃所有页面，并取消正在进行的加载。
+     */
+    private void reset() {
+        cancelLoads(0);
+        mPages.clear();
+        mStalePages.clear();
+        Arrays.fill(mPageStartValid, false);
+        mPageCount = 0;
+        mCount = 0;
+        mHasMore = false;
+        mPagingEnabled = false;
+        mLastPosition = 0;
+    }
+
+    /**
+     * 取消从 fromPage 开始的页面的加载。
+     */
+    private void cancelLoads(int fromPage) {
+        for (int i = mLoading.size() - 1; i >= 0; i--) {
+            if (mLoading.keyAt(i) >= fromPage) {
+                mLoading.valueAt(i).cancel(false);
+                mLoading.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * 数据从 fromPage 开始发生了变化：取消这些页面正在进行的加载，把它们之后各页的键集起点标记为失效，
+     * 并把内存中的这些页面标记为需要重新加载。调用者随后调用 {@link #refreshStalePages()}。
+     */
+    private void invalidateFrom(int fromPage) {
+        cancelLoads(fromPage);
+        for (int i = fromPage + 1; i < mPageStartValid.length; i++) {
+            mPageStartValid[i] = false;
+        }
+        for (int i = 0; i < mPages.size(); i++) {
+            if (mPages.keyAt(i) >= fromPage) {
+                mStalePages.put(mPages.keyAt(i), true);
+            }
+        }
+    }
+
+    /**
+     * 重新加载页号最小的过期页面。它加载完成后得到下一页的键集起点，再继续重新加载下一个过期页面。
+     * 旧的页面在新页面到达之前仍然显示。
+     */
+    private void refreshStalePages() {
+        if (mStalePages.size() > 0) {
+            int pageNumber = mStalePages.keyAt(0);
+            if (mLoading.get(pageNumber) == null) {
+                startLoad(pageNumber);
+            }
+        }
+    }
+
+    /**
+     * 将加载完成的页面放入内存，记录下一页的键集起点，并更新行数：
+     * 不满一页的页面是最后一页，它之后的页面被丢弃；最后一页重新加载后变满时，后面可能还有更多笔记。
+     */
+    private void installPage(int pageNumber, Page page) {
+        if (page.size < PAGE_SIZE) {
+            for (int i = mPages.size() - 1; i >= 0; i--) {
+                if (mPages.keyAt(i) > pageNumber) {
+                    mPages.removeAt(i);
+                }
+            }
+            for (int i = mStalePages.size() - 1; i >= 0; i--) {
+                int key = mStalePages.keyAt(i);
+                if (key > pageNumber) {
+                    mStalePages.delete(key);
+                }
+            }
+            cancelLoads(pageNumber + 1);
+            mPageCount = page.size > 0 || pageNumber == 0 ? pageNumber + 1 : pageNumber;
+            mCount = pageNumber * PAGE_SIZE + page.size;
+            mHasMore = false;
+        } else if (pageNumber >= mPageCount - 1) {
+            mPageCount = pageNumber + 1;
+            mCount = mPageCount * PAGE_SIZE;
+            mHasMore = mPagingEnabled;
+        }
+
+        if (page.size == 0 && pageNumber > 0) {
+            // 列表在这一页之前就结束了
+            mPages.remove(pageNumber);
+            return;
+        }
+        mPages.put(pageNumber, page);
+
+        if (page.size > 0) {
+            int next = pageNumber + 1;
+            if (next >= mPageStartModified.length) {
+                int length = Math.max(next + 1, mPageStartModified.length * 2);
+                mPageStartModified = Arrays.copyOf(mPageStartModified, length);
+                mPageStartId = Arrays.copyOf(mPageStartId, length);
+                mPageStartValid = Arrays.copyOf(mPageStartValid, length);
+            }
+            mPageStartModified[next] = page.modified[page.size - 1];
+            mPageStartId[next] = page.ids[page.size - 1];
+            mPageStartValid[next] = true;
+        }
+
+        evictPages();
+    }
+
+    /**
+     * 如果内存中的页面过多，则丢弃离最近访问位置最远的页面。
+     */
+    private void evictPages() {
+        if (!mPagingEnabled) {
+            return;
+        }
+        int current = mLastPosition / PAGE_SIZE;
+        while (mPages.size() > MAX_RESIDENT_PAGES) {
+            int farthest = mPages.keyAt(0);
+            for (int i = 1; i < mPages.size(); i++) {
+                int key = mPages.keyAt(i);
+                if (Math.abs(key - current) > Math.abs(farthest - current)) {
+                    farthest = key;
+                }
+            }
+            mPages.remove(farthest);
+            mStalePages.delete(farthest);
+        }
+    }
+
+    /**
+     * 确保包含给定位置的页面已加载，并在接近已加载区域的边界时预取相邻页面。
+     *
+     * @return 包含该位置的页面；如果页面还没有加载完成，则返回 null。
+     */
+    private Page ensurePage(int position) {
+        mLastPosition = position;
+        int pageNumber = position / PAGE_SIZE;
+        Page page = mPages.get(pageNumber);
+
+        if (mPagingEnabled) {
+            if (page == null) {
+                loadPage(pageNumber);
+            }
+
+            int offset = position % PAGE_SIZE;
+            if (offset >= PAGE_SIZE - PREFETCH_DISTANCE
+                    && (pageNumber + 1 < mPageCount || mHasMore)) {
+                loadPage(pageNumber + 1);
+            } else if (offset < PREFETCH_DISTANCE && pageNumber > 0) {
+                loadPage(pageNumber - 1);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * 如果页面既不在内存中也没有正在加载，则在后台加载它。
+     */
+    private void loadPage(int pageNumber) {
+        if (mPages.get(pageNumber) != null || mLoading.get(pageNumber) != null) {
+            return;
+        }
+        startLoad(pageNumber);
+    }
+
+    /**
+     * 在后台加载一页。键集起点有效时从起点开始查询；起点已经失效时按位置查询。
+     */
+    private void startLoad(int pageNumber) {
+        Uri.Builder builder = mUri.buildUpon().appendQueryParameter(
+                NotePad.Notes.LIMIT_QUERY_PARAMETER, Integer.toString(PAGE_SIZE));
+        if (pageNumber > 0) {
+            if (pageNumber < mPageStartValid.length && mPageStartValid[pageNumber]) {
+                builder.appendQueryParameter(NotePad.Notes.BEFORE_MODIFIED_QUERY_PARAMETER,
+                        Long.toString(mPageStartModified[pageNumber]));
+                builder.appendQueryParameter(NotePad.Notes.BEFORE_ID_QUERY_PARAMETER,
+                        Long.toString(mPageStartId[pageNumber]));
+            } else {
+                builder.appendQueryParameter(NotePad.Notes.OFFSET_QUERY_PARAMETER,
+                        Integer.toString(pageNumber * PAGE_SIZE));
+            }
+        }
+
+        PageTask task = new PageTask(pageNumber, builder.build());
+        mLoading.put(pageNumber, task);
+        task.executeOnExecutor(AsyncTask.SERIAL_EXECUTOR);
+    }
+
+    /**
+     * @return 给定位置的笔记标题；如果该位置的页面还没有加载，则返回 null。
+     */
+    String getTitle(int position) {
+        Page page = mPages.get(position / PAGE_SIZE);
+        int row = position % PAGE_SIZE;
+        return page != null && row < page.size ? page.titles[row] : null;
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return 给定位置的笔记 ID；如果该位置的页面还没有加载，则返回 null。
+     */
+    @Override
+    public Object getItem(int position) {
+        long id = getItemId(position);
+        return id < 0 ? null : Long.valueOf(id);
+    }
+
+    /**
+     * @return 给定位置的笔记 ID；如果该位置的页面还没有加载，则返回 -1。
+     */
+    @Override
+    public long getItemId(int position) {
+        Page page = mPages.get(position / PAGE_SIZE);
+        int row = position % PAGE_SIZE;
+        return page != null && row < page.size ? page.ids[row] : -1;
+    }
+
+    /**
+     * 行 ID 就是笔记 ID，数据变化后仍然指向同一条笔记，因此 ListView 可以按 ID 保留选中状态。
+     */
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        View view = convertView;
+        ViewHolder holder;
+        if (view == null) {
+            view = mInflater.inflate(R.layout.noteslist_item, parent, false);
+            holder = new ViewHolder(view);
+            view.setTag(holder);
+        } else {
+            holder = (ViewHolder) view.getTag();
+        }
+
+        Page page = ensurePage(position);
+        int row = position % PAGE_SIZE;
+
+        if (page != null && row < page.size) {
+            // 没有选择颜色的笔记使用默认的卡片颜色
+            int color = page.colors[row];
+            holder.bind(page.ids[row], page.titles[row], page.modified[row], page.previews[row],
+                    color != 0 ? color : mDefaultColor, mDateFormatter);
+        } else {
+            // 页面还在加载，先显示空行
+            holder.clear();
+        }
+        return view;
+    }
+
+    /**
+     * 在后台加载一页笔记的任务
+     */
+    private class PageTask extends AsyncTask<Void, Void, Page> {
+        private final int mPageNumber;
+        private final Uri mPageUri;
+
+        PageTask(int pageNumber, Uri pageUri) {
+            mPageNumber = pageNumber;
+            mPageUri = pageUri;
+        }
+
+        @Override
+        protected Page doInBackground(Void... params) {
+            Cursor cursor = mResolver.query(mPageUri, PROJECTION, null, null,
+                    NotePad.Notes.PAGED_SORT_ORDER);
+            if (cursor == null) {
+                return null;
+            }
+            try {
+                return new Page(cursor, PAGE_SIZE);
+            } finally {
+                cursor.close();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Page page) {
+            // 如果加载已被取消（数据在加载期间被重置或发生了变化），则丢弃这个页面
+            if (mLoading.get(mPageNumber) != this) {
+                return;
+            }
+            mLoading.remove(mPageNumber);
+            mStalePages.delete(mPageNumber);
+            if (page != null) {
+                installPage(mPageNumber, page);
+                notifyDataSetChanged();
+            }
+            refreshStalePages();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import android.os.Bundle;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 提供者按 URI 模式和操作分别统计的性能指标：调用次数、总耗时、延迟直方图、返回或影响的行数，
+ * 以及通过管道写出的字节数。
+ * <p>
+ * 所有统计项在构造时一次创建，记录时只做数组索引和原子加法，不分配内存也不加锁，
+ * 可以在提供者的多个 binder 线程中并发调用。
+ */
+class ProviderMetrics {
+
+    static final int OP_QUERY = 0;
+    static final int OP_INSERT = 1;
+    static final int OP_UPDATE = 2;
+    static final int OP_DELETE = 3;
+    static final int OP_OPEN_FILE = 4;
+
+    private static final String[] OP_NAMES = {
+            "query", "insert", "update", "delete", "openTypedAssetFile"
+    };
+
+    // 不匹配任何模式的 URI（UriMatcher.NO_MATCH）使用的名称
+    private static final String UNKNOWN_PATTERN = "unknown";
+
+    /**
+     * 单个（模式，操作）组合的统计。
+     */
+    private static final class Entry {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong rows = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+    }
+
+    private final String[] mPatterns;
+
+    // 按 [匹配码 + 1][操作] 索引，第 0 行统计不匹配的 URI
+    private final Entry[][] mEntries;
+
+    /**
+     * @param patterns 以 UriMatcher 匹配码为下标的模式名称，未使用的匹配码可以为 null。
+     */
+    ProviderMetrics(String[] patterns) {
+        mPatterns = patterns;
+        mEntries = new Entry[patterns.length + 1][OP_NAMES.length];
+        for (Entry[] row : mEntries) {
+            for (int op = 0; op < row.length; op++) {
+                row[op] = new Entry();
+            }
+        }
+    }
+
+    /**
+     * 记录一次调用。
+     *
+     * @param match UriMatcher 的匹配码
+     * @param startNanos 调用开始时 {@link System#nanoTime()} 的值
+     * @param rows 返回或影响的行数
+     */
+    void record(int match, int op, long startNanos, long rows) {
+        Entry entry = entry(match, op);
+        entry.latency.recordNanos(System.nanoTime() - startNanos);
+        if (rows > 0) {
+            entry.rows.addAndGet(rows);
+        }
+    }
+
+    /**
+     * 把通过管道写出的字节数计入给定的模式和操作，不增加调用次数。
+     */
+    void addBytes(int match, int op, long bytes) {
+        entry(match, op).bytes.addAndGet(bytes);
+    }
+
+    /**
+     * 返回所有统计的快照。每个被调用过的组合是一个以 "模式:操作" 为键的嵌套 Bundle，
+     * 包含 {@link NotePad} 中的 KEY_METRIC_* 键。
+     */
+    Bundle snapshot() {
+        Bundle snapshot = new Bundle();
+        for (int i = 0; i < mEntries.length; i++) {
+            for (int op = 0; op < OP_NAMES.length; op++) {
+                LatencyHistogram latency = mEntries[i][op].latency;
+                long count = latency.getCount();
+                if (count == 0) {
+                    continue;
+                }
+                Bundle metric = new Bundle();
+                metric.putLong(NotePad.KEY_METRIC_COUNT, count);
+                metric.putDouble(NotePad.KEY_METRIC_TOTAL_MILLIS, latency.getTotalNanos() / 1e6);
+                metric.putDouble(NotePad.KEY_METRIC_P50_MILLIS, latency.getPercentileMillis(50));
+                metric.putDouble(NotePad.KEY_METRIC_P90_MILLIS, latency.getPercentileMillis(90));
+                metric.putDouble(NotePad.KEY_METRIC_P99_MILLIS, latency.getPercentileMillis(99));
+                metric.putLong(NotePad.KEY_METRIC_ROWS, mEntries[i][op].rows.get());
+                metric.putLong(NotePad.KEY_METRIC_BYTES, mEntries[i][op].bytes.get());
+                snapshot.putBundle(patternName(i - 1) + ":" + OP_NAMES[op], metric);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 清除所有统计。与正在进行的记录并发时，个别样本可能只有一部分被清除。
+     */
+    void reset() {
+        for (Entry[] row : mEntries) {
+            for (Entry entry : row) {
+                entry.latency.reset();
+                entry.rows.set(0);
+                entry.bytes.set(0);
+            }
+        }
+    }
+
+    private Entry entry(int match, int op) {
+        int index = match + 1;
+        if (index < 0 || index >= mEntries.length) {
+            index = 0;
+        }
+        return mEntries[index][op];
+    }
+
+    private String patternName(int match) {
+        if (match < 0 || mPatterns[match] == null) {
+            return UNKNOWN_PATTERN;
+        }
+        return mPatterns[match];
+    }
+
+    /**
+     * 统计写出字节数的输出流。只在写管道的线程中使用，因此计数不需要同步。
+     */
+    static class CountingOutputStream extends FilterOutputStream {
+        private long mCount;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            mCount += len;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import java.util.Random;
+
+/**
+ * 基准测试使用的笔记文本：中文和拉丁文字的词混合，夹杂空格、换行和少量补充平面字符。
+ * 由给定种子确定，每次运行得到相同的文本。
+ */
+final class CorpusText {
+
+    private static final String[] WORDS = {
+            "会议", "记录", "明天", "项目", "进度", "需要", "确认", "客户", "反馈", "修改",
+            "notes", "draft", "meeting", "follow", "up", "review", "release", "todo", "2024",
+            "📝"
+    };
+
+    private CorpusText() {
+    }
+
+    /**
+     * 生成 length 个字符左右的文本，不在代理对中间截断。
+     */
+    static String body(Random random, int length) {
+        StringBuilder text = new StringBuilder(length + 16);
+        while (text.length() < length) {
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+            int separator = random.nextInt(12);
+            text.append(separator == 0 ? '\n' : ' ');
+        }
+        text.setLength(length);
+        if (Character.isHighSurrogate(text.charAt(length - 1))) {
+            text.setCharAt(length - 1, ' ');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * 记录延迟样本的开销。提供者和编辑器在热路径上调用 recordNanos，它不应分配内存，
+ * 并且在多个 binder 线程同时记录时仍然保持可用的吞吐量。
+ */
+@State(Scope.Benchmark)
+public class LatencyHistogramBenchmark {
+
+    private final LatencyHistogram mHistogram = new LatencyHistogram();
+
+    @Setup
+    public void setUp() {
+        // percentile 在有样本的直方图上测量
+        Sample sample = new Sample();
+        for (int i = 0; i < 100000; i++) {
+            mHistogram.recordNanos(sample.next());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Sample {
+        long mNanos = 1;
+
+        long next() {
+            // 覆盖从微秒到秒的各个桶
+            mNanos = mNanos * 3 % 2000000011L;
+            return mNanos;
+        }
+    }
+
+    @Benchmark
+    public void record(Sample sample) {
+        mHistogram.recordNanos(sample.next());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended(Sample sample) {
+        mHistogram.recordNanos(sample.next());
+    }
+
+    @Benchmark
+    public double percentile() {
+        return mHistogram.getPercentileMillis(99);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * 列表绑定一行时格式化修改日期的开销。使用 gc 分析器运行时，cachedHit 的 gc.alloc.rate.norm 应当为 0：
+ * 命中缓存时不分配任何对象。perBind 是缓存之前每次绑定都新建格式化器的做法，作为对照。
+ */
+@State(Scope.Thread)
+public class NoteDateFormatterBenchmark {
+
+    // 一屏大约显示的行数，同一屏的修改时间落在不同的秒
+    private static final int ROWS = 16;
+
+    private final long[] mTimestamps = new long[ROWS];
+    private NoteDateFormatter mFormatter;
+    private int mNext;
+    private long mMissing;
+
+    @Setup
+    public void setUp() {
+        long now = 1700000000000L;
+        for (int i = 0; i < ROWS; i++) {
+            mTimestamps[i] = now - i * 61000L;
+        }
+        mFormatter = new NoteDateFormatter();
+        for (long timestamp : mTimestamps) {
+            mFormatter.format(timestamp);
+        }
+        mMissing = now;
+    }
+
+    @Benchmark
+    public String cachedHit() {
+        mNext = (mNext + 1) & (ROWS - 1);
+        return mFormatter.format(mTimestamps[mNext]);
+    }
+
+    @Benchmark
+    public String cachedMiss() {
+        // 每次换一个新的秒，总是未命中
+        mMissing += 1000;
+        return mFormatter.format(mMissing);
+    }
+
+    @Benchmark
+    public String perBind() {
+        mNext = (mNext + 1) & (ROWS - 1);
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault())
+                .format(new Date(mTimestamps[mNext]));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * 导出编码的吞吐量：把 notes 条笔记写成 NDJSON，输出丢弃，只衡量转义和写出的开销。
+ */
+@State(Scope.Thread)
+public class NoteNdjsonWriterBenchmark {
+
+    @Param({"1000"})
+    public int notes;
+
+    @Param({"200", "20000"})
+    public int bodyLength;
+
+    private String[] mTitles;
+    private String[] mBodies;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mTitles = new String[notes];
+        mBodies = new String[notes];
+        for (int i = 0; i < notes; i++) {
+            mBodies[i] = CorpusText.body(random, bodyLength);
+            mTitles[i] = NoteText.deriveTitle(mBodies[i]);
+        }
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        CountingWriter counter = new CountingWriter();
+        BufferedWriter out = new BufferedWriter(counter, 64 * 1024);
+        NoteNdjsonWriter json = new NoteNdjsonWriter(out);
+        for (int i = 0; i < notes; i++) {
+            json.beginNote(i, mTitles[i], 1700000000000L, 1700000000000L + i, 0);
+            json.appendNote(mBodies[i]);
+            json.endNote();
+        }
+        out.flush();
+        return counter.mCount;
+    }
+
+    /**
+     * 只统计字符数的 writer。
+     */
+    private static final class CountingWriter extends Writer {
+        long mCount;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            mCount += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link NoteText} 的吞吐量。bodyLength 覆盖短笔记、一个分块左右的笔记和需要按段编辑的很大的笔记。
+ */
+@State(Scope.Benchmark)
+public class NoteTextBenchmark {
+
+    // 与 NotePad.NoteChunks.CHUNK_SIZE 相同
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    @Param({"200", "20000", "2000000"})
+    public int bodyLength;
+
+    private String mBody;
+    private String mQuery;
+
+    @Setup
+    public void setUp() {
+        mBody = CorpusText.body(new Random(42), bodyLength);
+        mQuery = "  会议 notes \"draft\"  2024 ";
+    }
+
+    @Benchmark
+    public String deriveTitle() {
+        return NoteText.deriveTitle(mBody);
+    }
+
+    @Benchmark
+    public String buildPreview() {
+        return NoteText.buildPreview(mBody);
+    }
+
+    @Benchmark
+    public List<String> splitBody() {
+        return NoteText.splitBody(mBody, CHUNK_SIZE);
+    }
+
+    @Benchmark
+    public String buildMatchExpression() {
+        return NoteText.buildMatchExpression(mQuery);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.notepad;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * 笔记列表滚动时绑定一行的开销，走的是 PagedNotesAdapter.getView() 中相同的 {@link NoteRowBinder}
+ * 路径：行数据来自按列复制好的页面数组，视图由 ListView 回收复用。
+ * <p>
+ * 两个基准测试的 gc.alloc.rate.norm 都必须为 0，由 :notes-core:checkBindAllocations 检查，
+ * 它在 :notes-core:jmh 之后运行，有分配时构建失败。
+ * scroll 每次把回收的视图绑定到另一条笔记，所有部分都要更新；rebind 重新绑定视图已经显示的笔记，
+ * 对应内容变化通知之后的重新绑定。
+ */
+@State(Scope.Thread)
+public class NotesListBindBenchmark {
+
+    // 与 PagedNotesAdapter.PAGE_SIZE 相同
+    private static final int PAGE_SIZE = 100;
+
+    // 一屏的行数加上 ListView 回收池中的视图数
+    private static final int VIEWS = 16;
+
+    /**
+     * 代替行视图，只记下最后一次更新的值。
+     */
+    private static final class RowViews extends NoteRowBinder {
+        int color;
+        String title;
+        String preview;
+        String date;
+
+        @Override
+        protected void onColorChanged(int color) {
+            this.color = color;
+        }
+
+        @Override
+        protected void onTitleChanged(String title) {
+            this.title = title;
+        }
+
+        @Override
+        protected void onPreviewChanged(String preview) {
+            this.preview = preview;
+        }
+
+        @Override
+        protected void onDateChanged(String date) {
+            this.date = date;
+        }
+    }
+
+    // 一页笔记，与 PagedNotesAdapter.Page 的数组相同
+    private final long[] mIds = new long[PAGE_SIZE];
+    private final String[] mTitles = new String[PAGE_SIZE];
+    private final long[] mModified = new long[PAGE_SIZE];
+    private final String[] mPreviews = new String[PAGE_SIZE];
+    private final int[] mColors = new int[PAGE_SIZE];
+
+    private final RowViews[] mViews = new RowViews[VIEWS];
+    private NoteDateFormatter mDateFormatter;
+    private int mPosition;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long now = 1700000000000L;
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            String body = CorpusText.body(random, 400);
+            mIds[i] = PAGE_SIZE - i;
+            mTitles[i] = NoteText.deriveTitle(body);
+            // 相邻的笔记相隔 61 秒，一页中的修改时间落在日期缓存的不同槽中
+            mModified[i] = now - i * 61000L;
+            mPreviews[i] = NoteText.buildPreview(body);
+            mColors[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        for (int i = 0; i < VIEWS; i++) {
+            mViews[i] = new RowViews();
+        }
+        mDateFormatter = new NoteDateFormatter();
+        // 每条笔记的修改日期格式化一次，之后滚动时都命中缓存
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            bind(i);
+        }
+    }
+
+    @Benchmark
+    public NoteRowBinder scroll() {
+        mPosition = mPosition + 1 == PAGE_SIZE ? 0 : mPosition + 1;
+        return bind(mPosition);
+    }
+
+    @Benchmark
+    public NoteRowBinder rebind() {
+        RowViews views = mViews[0];
+        views.bind(mIds[0], mTitles[0], mModified[0], mPreviews[0], mColors[0], mDateFormatter);
+        return views;
+    }
+
+    private NoteRowBinder bind(int position) {
+        // 向下滚动时，最早移出屏幕的视图被复用到新出现的位置
+        RowViews views = mViews[position % VIEWS];
+        views.bind(mIds[position], mTitles[position], mModified[position], mPreviews[position],
+                mColors[position], mDateFormatter);
+        return views;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 一个定长的延迟直方图。以微秒为单位记录样本，每个 2 的幂区间再分成 4 个子桶，
+ * 因此百分位数的相对误差不超过 25%。记录样本不分配内存，可以在多个线程中并发调用。
+ */
+public final class LatencyHistogram {
+
+    // 每个 2 的幂区间的子桶数量（以位数表示）
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // 可以区分的最大指数，超过 2^40 微秒（约 12 天）的样本都记入最后一个桶
+    private static final int MAX_EXPONENT = 40;
+
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotalNanos = new AtomicLong();
+
+    /**
+     * 记录一个以纳秒为单位的样本。
+     */
+    public void recordNanos(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        mBuckets.incrementAndGet(bucketIndex(nanos / 1000));
+        mCount.incrementAndGet();
+        mTotalNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @return 已记录的样本数量。
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * @return 所有样本的总耗时（纳秒）。
+     */
+    public long getTotalNanos() {
+        return mTotalNanos.get();
+    }
+
+    /**
+     * 返回给定百分位数的近似值，即包含该百分位样本的桶的上界。
+     *
+     * @param percentile 0 到 100 之间的百分位数，例如 50 或 99。
+     * @return 以毫秒为单位的延迟；没有样本时返回 0。
+     */
+    public double getPercentileMillis(double percentile) {
+        long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(count * percentile / 100.0);
+        if (target < 1) {
+            target = 1;
+        }
+
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets.get(i);
+            if (seen >= target) {
+                return bucketUpperBoundMicros(i) / 1000.0;
+            }
+        }
+        return bucketUpperBoundMicros(BUCKET_COUNT - 1) / 1000.0;
+    }
+
+    /**
+     * 清除所有样本。
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mTotalNanos.set(0);
+    }
+
+    /**
+     * 返回以微秒为单位的值所属的桶。小于 4 的值各占一个桶，其余的值按指数和紧随最高位之后的两位定位。
+     */
+    private static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (micros >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * 返回桶所覆盖的最小值（微秒）。
+     */
+    private static long bucketLowerBoundMicros(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * 返回桶所覆盖的最大值（微秒）。
+     */
+    private static long bucketUpperBoundMicros(int index) {
+        if (index >= BUCKET_COUNT - 1) {
+            return bucketLowerBoundMicros(index) * 2;
+        }
+        return bucketLowerBoundMicros(index + 1);
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * 合成笔记数据的生成器，用于负载测试和长时间运行的测试。相同的种子总是生成相同的笔记序列，
+ * 因此不同的基准测试和不同的设备使用相同的数据。
+ * <p>
+ * 生成的笔记模拟真实的使用情况：中文、拉丁文字和两者混合的内容；长度从几个字符到几兆字符，
+ * 大多数笔记很短，少数很长；标题的长度各不相同，有的为空，有的取自内容开头；
+ * 修改日期集中在最近，越早的日期越稀疏。
+ * <p>
+ * 每次调用 {@link #next()} 生成下一条笔记，然后通过 getter 读取。此类不是线程安全的。
+ * <p>
+ * 命令行用法：{@code NoteCorpus <数量> <种子> <输出文件|-> [最大内容长度]}，以 NDJSON 格式写出，
+ * 可以直接在笔记列表中导入。
+ */
+public final class NoteCorpus {
+
+    /**
+     * 默认的最大内容长度（字符数）
+     */
+    public static final int DEFAULT_MAX_BODY_LENGTH = 2 * 1024 * 1024;
+
+    /**
+     * 生成的修改日期都不晚于这个时间（2023-11-14），使生成结果与运行的日期无关
+     */
+    public static final long END_TIME = 1700000000000L;
+
+    // 修改日期分布的时间跨度：五年
+    private static final long DATE_SPAN = 5L * 365 * 24 * 60 * 60 * 1000;
+
+    private static final String[] CHINESE_WORDS = {
+            "会议", "记录", "明天", "项目", "进度", "需要", "确认", "客户", "反馈", "修改",
+            "计划", "周末", "购物", "清单", "学习", "笔记", "读书", "电影", "旅行", "预算",
+            "提醒", "电话", "邮件", "设计", "方案", "测试", "发布", "问题", "总结", "想法",
+            "今天", "下午", "上午", "晚上", "时间", "地点", "朋友", "家人", "工作", "生活"
+    };
+
+    private static final String[] LATIN_WORDS = {
+            "meeting", "notes", "draft", "follow", "up", "review", "release", "todo", "idea",
+            "budget", "travel", "book", "movie", "list", "call", "email", "design", "plan",
+            "test", "bug", "fix", "launch", "summary", "question", "the", "a", "and", "of",
+            "to", "in", "for", "with", "on", "next", "week", "today", "remember", "check",
+            "buy", "milk"
+    };
+
+    // 少量补充平面字符，使分块和预览的代理对处理得到覆盖
+    private static final String[] SYMBOLS = { "📝", "✅", "🎉", "⚠", "★" };
+
+    private static final int CHINESE = 0;
+    private static final int LATIN = 1;
+    private static final int MIXED = 2;
+
+    // 每条笔记从主序列取一个种子，笔记内的随机数使用自己的序列，
+    // 因此一条笔记消耗的随机数多少不影响之后的笔记
+    private final Random mRandom;
+    private final Random mNoteRandom = new Random();
+    private final int mMaxBodyLength;
+
+    private String mTitle;
+    private String mBody;
+    private long mCreated;
+    private long mModified;
+
+    /**
+     * 创建一个最大内容长度为 {@link #DEFAULT_MAX_BODY_LENGTH} 的生成器。
+     */
+    public NoteCorpus(long seed) {
+        this(seed, DEFAULT_MAX_BODY_LENGTH);
+    }
+
+    /**
+     * @param maxBodyLength 内容长度的上限。较长的内容在生成时按上限截短，
+     *                      其他方面（标题、日期、之后的笔记）与上限无关。
+     */
+    public NoteCorpus(long seed, int maxBodyLength) {
+        mRandom = new Random(seed);
+        mMaxBodyLength = maxBodyLength;
+    }
+
+    /**
+     * 生成下一条笔记。
+     */
+    public void next() {
+        mNoteRandom.setSeed(mRandom.nextLong());
+
+        // 先取出所有与内容长度无关的随机选择，内容的长度不影响它们
+        int language = pickLanguage();
+        int length = Math.min(pickBodyLength(), mMaxBodyLength);
+        int titleKind = mNoteRandom.nextInt(100);
+        long titleSeed = mNoteRandom.nextLong();
+
+        // 修改日期按 u^3 分布，集中在 END_TIME 之前不久；创建日期在修改日期之前
+        double u = mNoteRandom.nextDouble();
+        mModified = END_TIME - (long) (DATE_SPAN * u * u * u);
+        double v = mNoteRandom.nextDouble();
+        mCreated = mModified - (long) ((mModified - (END_TIME - DATE_SPAN)) * v * v);
+
+        mBody = text(language, length);
+
+        // 8% 没有标题，60% 取自内容开头，其余是一个短语
+        if (titleKind < 8) {
+            mTitle = "";
+        } else if (titleKind < 68) {
+            mTitle = NoteText.deriveTitle(mBody.trim());
+        } else {
+            mNoteRandom.setSeed(titleSeed);
+            mTitle = text(language, 2 + mNoteRandom.nextInt(60)).trim();
+        }
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public String getBody() {
+        return mBody;
+    }
+
+    public long getCreated() {
+        return mCreated;
+    }
+
+    public long getModified() {
+        return mModified;
+    }
+
+    /**
+     * @return 生成的内容中使用的第 index 个词（对词表大小取模），用于构造能够命中的搜索词。
+     */
+    public static String word(int index) {
+        int count = CHINESE_WORDS.length + LATIN_WORDS.length;
+        index = ((index % count) + count) % count;
+        return index < CHINESE_WORDS.length
+                ? CHINESE_WORDS[index] : LATIN_WORDS[index - CHINESE_WORDS.length];
+    }
+
+    private int pickLanguage() {
+        int p = mNoteRandom.nextInt(100);
+        return p < 40 ? CHINESE : p < 75 ? LATIN : MIXED;
+    }
+
+    /**
+     * 选择内容长度：70% 在 16 到 400 之间，25% 在 400 到 4K 之间，4.5% 在 4K 到 64K 之间，
+     * 0.5% 在 64K 到 2M 之间。每个区间内按对数均匀分布。
+     */
+    private int pickBodyLength() {
+        int p = mNoteRandom.nextInt(1000);
+        if (p < 700) {
+            return logUniform(16, 400);
+        } else if (p < 950) {
+            return logUniform(400, 4 * 1024);
+        } else if (p < 995) {
+            return logUniform(4 * 1024, 64 * 1024);
+        }
+        return logUniform(64 * 1024, DEFAULT_MAX_BODY_LENGTH);
+    }
+
+    private int logUniform(int min, int max) {
+        double log = Math.log(min) + mNoteRandom.nextDouble() * (Math.log(max) - Math.log(min));
+        return (int) Math.exp(log);
+    }
+
+    /**
+     * 生成 length 个字符的文本，由句子和段落组成，不在代理对中间截断。
+     */
+    private String text(int language, int length) {
+        StringBuilder text = new StringBuilder(length + 16);
+        int wordsInSentence = 0;
+        int sentenceLength = 4 + mNoteRandom.nextInt(12);
+        while (text.length() < length) {
+            boolean chinese = language == CHINESE
+                    || (language == MIXED && mNoteRandom.nextInt(2) == 0);
+            if (mNoteRandom.nextInt(200) == 0) {
+                text.append(SYMBOLS[mNoteRandom.nextInt(SYMBOLS.length)]);
+            } else if (chinese) {
+                text.append(CHINESE_WORDS[mNoteRandom.nextInt(CHINESE_WORDS.length)]);
+            } else {
+                if (wordsInSentence > 0) {
+                    text.append(' ');
+                }
+                text.append(LATIN_WORDS[mNoteRandom.nextInt(LATIN_WORDS.length)]);
+            }
+
+            if (++wordsInSentence == sentenceLength) {
+                text.append(chinese ? "。" : ". ");
+                // 大约每三句换一段
+                if (mNoteRandom.nextInt(3) == 0) {
+                    text.append('\n');
+                }
+                wordsInSentence = 0;
+                sentenceLength = 4 + mNoteRandom.nextInt(12);
+            }
+        }
+        text.setLength(length);
+        if (length > 0 && Character.isHighSurrogate(text.charAt(length - 1))) {
+            text.setLength(length - 1);
+        }
+        return text.toString();
+    }
+
+    /**
+     * 以 NDJSON 格式写出 count 条笔记，ID 从 1 开始。
+     */
+    public void writeNdjson(Writer out, int count) throws IOException {
+        NoteNdjsonWriter json = new NoteNdjsonWriter(out);
+        for (int i = 1; i <= count; i++) {
+            next();
+            json.beginNote(i, mTitle, mCreated, mModified, 0);
+            json.appendNote(mBody);
+            json.endNote();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("usage: NoteCorpus <count> <seed> <output|-> [maxBodyLength]");
+            System.exit(2);
+        }
+        int count = Integer.parseInt(args[0]);
+        long seed = Long.parseLong(args[1]);
+        int maxBodyLength = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_MAX_BODY_LENGTH;
+
+        OutputStream stream = "-".equals(args[2]) ? System.out : new FileOutputStream(args[2]);
+        Writer out = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"), 64 * 1024);
+        try {
+            new NoteCorpus(seed, maxBodyLength).writeNdjson(out, count);
+        } finally {
+            out.close();
+        }
+    }
+}
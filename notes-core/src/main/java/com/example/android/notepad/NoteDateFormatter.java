@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * 把笔记的修改日期格式化为"yyyy-MM-dd HH:mm:ss"。
+ * 格式精确到秒，因此同一秒内的时间戳共用一个格式化结果；结果缓存在一个按秒直接映射的小表中，
+ * 命中缓存时不分配任何对象。未命中时复用同一个 SimpleDateFormat 和 Date。
+ * 此类不是线程安全的，每个线程（通常是 UI 线程）使用自己的实例。
+ */
+public final class NoteDateFormatter {
+
+    /**
+     * 缓存的槽数，必须是 2 的幂
+     */
+    private static final int CACHE_SIZE = 256;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final SimpleDateFormat mFormat =
+            new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+    private final Date mDate = new Date();
+
+    // 每个槽缓存的秒数及其格式化结果
+    private final long[] mSeconds = new long[CACHE_SIZE];
+    private final String[] mFormatted = new String[CACHE_SIZE];
+
+    // 缓存命中和未命中的次数，用于调试和基准测试
+    private int mHits;
+    private int mMisses;
+
+    public NoteDateFormatter() {
+        Arrays.fill(mSeconds, EMPTY);
+    }
+
+    /**
+     * 返回给定时间戳（毫秒）的格式化字符串。
+     */
+    public String format(long millis) {
+        long seconds = millis >= 0 ? millis / 1000 : (millis - 999) / 1000;
+        int slot = (int) (seconds ^ (seconds >>> 32)) & (CACHE_SIZE - 1);
+        if (mSeconds[slot] == seconds) {
+            mHits++;
+            return mFormatted[slot];
+        }
+
+        mMisses++;
+        mDate.setTime(seconds * 1000);
+        String formatted = mFormat.format(mDate);
+        mSeconds[slot] = seconds;
+        mFormatted[slot] = formatted;
+        return formatted;
+    }
+
+    public int getHitCount() {
+        return mHits;
+    }
+
+    public int getMissCount() {
+        return mMisses;
+    }
+}
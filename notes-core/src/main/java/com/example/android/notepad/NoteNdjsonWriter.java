@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 以换行分隔的 JSON（NDJSON）格式写出笔记，每行一个 JSON 对象，字段名与笔记表的列名（见 NotePad.Notes）相同。
+ * 笔记内容是每个对象的最后一个字段，可以分多次追加，因此分块存储的内容不必先拼接成一个字符串。
+ */
+public final class NoteNdjsonWriter {
+
+    // 字段名，与 NotePad.Notes 中的列名相同
+    private static final String FIELD_ID = "_id";
+    private static final String FIELD_TITLE = "title";
+    private static final String FIELD_CREATE_DATE = "created";
+    private static final String FIELD_MODIFICATION_DATE = "modified";
+    private static final String FIELD_COLOR = "color";
+    private static final String FIELD_NOTE = "note";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Writer mOut;
+
+    /**
+     * @param out 目标 writer。为了性能，应当是带缓冲的。
+     */
+    public NoteNdjsonWriter(Writer out) {
+        mOut = out;
+    }
+
+    /**
+     * 开始写出一条笔记：写出除内容以外的所有字段，以及内容字段的开头。
+     * 之后调用任意次 {@link #appendNote(String)}，最后调用 {@link #endNote()}。
+     *
+     * @param color 笔记的背景颜色（ARGB），0 表示默认颜色
+     */
+    public void beginNote(long id, String title, long created, long modified, int color)
+            throws IOException {
+        mOut.write("{\"" + FIELD_ID + "\":");
+        mOut.write(Long.toString(id));
+        mOut.write(",\"" + FIELD_TITLE + "\":");
+        if (title == null) {
+            mOut.write("null");
+        } else {
+            mOut.write('"');
+            writeEscaped(title);
+            mOut.write('"');
+        }
+        mOut.write(",\"" + FIELD_CREATE_DATE + "\":");
+        mOut.write(Long.toString(created));
+        mOut.write(",\"" + FIELD_MODIFICATION_DATE + "\":");
+        mOut.write(Long.toString(modified));
+        mOut.write(",\"" + FIELD_COLOR + "\":");
+        mOut.write(Integer.toString(color));
+        mOut.write(",\"" + FIELD_NOTE + "\":\"");
+    }
+
+    /**
+     * 追加一段笔记内容。
+     */
+    public void appendNote(String text) throws IOException {
+        if (text != null) {
+            writeEscaped(text);
+        }
+    }
+
+    /**
+     * 结束当前笔记，并写出行分隔符。
+     */
+    public void endNote() throws IOException {
+        mOut.write("\"}\n");
+    }
+
+    /**
+     * 写出 JSON 字符串的转义形式。不需要转义的连续字符一次写出。
+     * U+2028 和 U+2029 也被转义，因为一些按行读取的工具会把它们当作换行。
+     */
+    private void writeEscaped(String text) throws IOException {
+        int length = text.length();
+        int run = 0;
+        for (int i = 0; i < length; i++) {
+            char ch = text.charAt(i);
+            String replacement;
+            if (ch == '"') {
+                replacement = "\\\"";
+            } else if (ch == '\\') {
+                replacement = "\\\\";
+            } else if (ch == '\n') {
+                replacement = "\\n";
+            } else if (ch == '\r') {
+                replacement = "\\r";
+            } else if (ch == '\t') {
+                replacement = "\\t";
+            } else if (ch < 0x20 || ch == '\u2028' || ch == '\u2029') {
+                replacement = null;
+            } else {
+                continue;
+            }
+
+            if (i > run) {
+                mOut.write(text, run, i - run);
+            }
+            if (replacement != null) {
+                mOut.write(replacement);
+            } else {
+                mOut.write("\\u");
+                mOut.write(HEX_DIGITS[(ch >> 12) & 0xf]);
+                mOut.write(HEX_DIGITS[(ch >> 8) & 0xf]);
+                mOut.write(HEX_DIGITS[(ch >> 4) & 0xf]);
+                mOut.write(HEX_DIGITS[ch & 0xf]);
+            }
+            run = i + 1;
+        }
+        if (length > run) {
+            mOut.write(text, run, length - run);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.notepad;
+
+/**
+ * 笔记列表中一个行视图及其当前显示的数据。重新绑定时只更新与当前显示的内容不同的部分，
+ * 因为更新视图会触发重新布局和重绘。
+ * <p>
+ * 绑定过程本身只做比较和字段赋值，修改日期通过 {@link NoteDateFormatter} 按秒缓存，
+ * 因此滚动时绑定不分配任何对象；NotesListBindBenchmark 使用 gc 分析器检查这一点。
+ * 子类把变化应用到实际的视图上。此类不是线程安全的，只在 UI 线程上使用。
+ */
+public abstract class NoteRowBinder {
+
+    // 视图当前显示的笔记；没有显示任何笔记时 id 为 -1
+    private long mId = -1;
+    private String mBoundTitle;
+    private String mBoundPreview;
+    private long mBoundModified;
+    private int mBoundColor;
+
+    /**
+     * 把一行笔记绑定到视图。
+     *
+     * @param color 卡片颜色，已经把未选择颜色的笔记替换为默认颜色
+     */
+    public final void bind(long id, String title, long modified, String preview, int color,
+                           NoteDateFormatter dateFormatter) {
+        boolean sameNote = mId == id;
+        if (mBoundColor != color) {
+            onColorChanged(color);
+            mBoundColor = color;
+        }
+        if (!sameNote || !equals(mBoundTitle, title)) {
+            onTitleChanged(title);
+            mBoundTitle = title;
+        }
+        if (!sameNote || !equals(mBoundPreview, preview)) {
+            onPreviewChanged(preview);
+            mBoundPreview = preview;
+        }
+        if (!sameNote || mBoundModified != modified) {
+            onDateChanged(dateFormatter.format(modified));
+            mBoundModified = modified;
+        }
+        mId = id;
+    }
+
+    /**
+     * 页面还在加载时显示空行，并清除卡片颜色。已经是空行时不做任何事。
+     */
+    public final void clear() {
+        if (mId == -1) {
+            return;
+        }
+        mId = -1;
+        mBoundTitle = null;
+        mBoundPreview = null;
+        mBoundColor = 0;
+        onColorChanged(0);
+        onTitleChanged(null);
+        onPreviewChanged(null);
+        onDateChanged(null);
+    }
+
+    /**
+     * @return 视图当前显示的笔记 ID；没有显示任何笔记时返回 -1。
+     */
+    public final long getBoundId() {
+        return mId;
+    }
+
+    protected abstract void onColorChanged(int color);
+
+    protected abstract void onTitleChanged(String title);
+
+    /**
+     * @param preview 提供者在写入时生成的预览，可能为空或 null
+     */
+    protected abstract void onPreviewChanged(String preview);
+
+    protected abstract void onDateChanged(String date);
+
+    private static boolean equals(String a, String b) {
+        return a == b || (a != null && a.equals(b));
+    }
+}
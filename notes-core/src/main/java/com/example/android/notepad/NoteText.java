@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 笔记文本的纯 Java 处理：生成标题和预览、切分分块、构造搜索表达式。
+ * 不依赖 Android，编辑器和提供者调用这里的方法，基准测试也可以在普通 JVM 上运行它们。
+ */
+public final class NoteText {
+
+    /**
+     * 从笔记内容生成标题时使用的最大长度
+     */
+    public static final int MAX_TITLE_LENGTH = 30;
+
+    /**
+     * 预览的最大长度（字符数）
+     */
+    public static final int PREVIEW_LENGTH = 100;
+
+    private NoteText() {
+    }
+
+    /**
+     * 从笔记内容生成标题：取前 30 个字符，如果内容更长，则在最后一个空格处截断。不在代理对中间截断。
+     */
+    public static String deriveTitle(String text) {
+        int length = text.length();
+        String title = text.substring(0, Math.min(MAX_TITLE_LENGTH, length));
+        if (length > MAX_TITLE_LENGTH) {
+            int lastSpace = title.lastIndexOf(' ');
+            if (lastSpace > 0) {
+                title = title.substring(0, lastSpace);
+            } else if (Character.isHighSurrogate(title.charAt(title.length() - 1))) {
+                title = title.substring(0, title.length() - 1);
+            }
+        }
+        return title;
+    }
+
+    /**
+     * 生成内容预览：跳过开头的空白，把连续的空白合并为一个空格，最多保留 {@link #PREVIEW_LENGTH} 个字符。
+     * 只扫描生成预览所需的部分，与内容的长度无关。
+     */
+    public static String buildPreview(String body) {
+        if (body == null) {
+            return "";
+        }
+        StringBuilder preview = new StringBuilder(Math.min(body.length(), PREVIEW_LENGTH));
+        boolean pendingSpace = false;
+        int length = body.length();
+        for (int i = 0; i < length && preview.length() < PREVIEW_LENGTH; i++) {
+            char ch = body.charAt(i);
+            if (Character.isWhitespace(ch) || Character.isSpaceChar(ch)) {
+                pendingSpace = preview.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                // 空格之后至少还要放下一个字符，预览不以空格结尾
+                if (preview.length() + 1 >= PREVIEW_LENGTH) {
+                    break;
+                }
+                preview.append(' ');
+                pendingSpace = false;
+            }
+            preview.append(ch);
+        }
+
+        // 不在代理对中间截断
+        int end = preview.length();
+        if (end > 0 && Character.isHighSurrogate(preview.charAt(end - 1))) {
+            preview.setLength(end - 1);
+        }
+        return preview.toString();
+    }
+
+    /**
+     * 把笔记内容切分为不超过 chunkSize 个字符的分块，分块边界不会落在代理对中间。
+     *
+     * @return 分块列表；内容不超过一个分块时返回空列表。
+     */
+    public static List<String> splitBody(String body, int chunkSize) {
+        ArrayList<String> chunks = new ArrayList<String>();
+        if (body == null || body.length() <= chunkSize) {
+            return chunks;
+        }
+
+        int length = body.length();
+        int start = 0;
+        while (start < length) {
+            int end = Math.min(start + chunkSize, length);
+            if (end < length && Character.isHighSurrogate(body.charAt(end - 1))) {
+                end--;
+            }
+            chunks.add(body.substring(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * 将用户输入的搜索文本转换为 FTS MATCH 表达式。每个以空白分隔的词都作为带引号的前缀词，
+     * 多个词之间是隐式的 AND 关系。双引号会被去掉，以免破坏表达式语法。
+     *
+     * @param query 用户输入的搜索文本
+     * @return MATCH 表达式；如果没有可搜索的词，则返回 null。
+     */
+    public static String buildMatchExpression(String query) {
+        if (query == null) {
+            return null;
+        }
+
+        StringBuilder match = new StringBuilder();
+        for (String term : query.replace('"', ' ').trim().split("\\s+")) {
+            if (term.length() == 0) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append('"').append(term).append("\"*");
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+}
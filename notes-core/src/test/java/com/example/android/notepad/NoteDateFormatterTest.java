@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.notepad;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class NoteDateFormatterTest {
+
+    // 与 NoteDateFormatter 的缓存槽数相同
+    private static final int CACHE_SIZE = 256;
+
+    private TimeZone mDefaultTimeZone;
+    private Locale mDefaultLocale;
+    private NoteDateFormatter mFormatter;
+
+    @Before
+    public void setUp() {
+        // 固定时区和语言，使期望的字符串与运行测试的机器无关
+        mDefaultTimeZone = TimeZone.getDefault();
+        mDefaultLocale = Locale.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        Locale.setDefault(Locale.US);
+        mFormatter = new NoteDateFormatter();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(mDefaultTimeZone);
+        Locale.setDefault(mDefaultLocale);
+    }
+
+    private static String reference(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+
+    @Test
+    public void formatsToTheSecond() {
+        assertEquals("2023-11-14 22:13:20", mFormatter.format(1700000000000L));
+        assertEquals("2023-11-14 22:13:20", mFormatter.format(1700000000999L));
+        assertEquals("2023-11-14 22:13:21", mFormatter.format(1700000001000L));
+        assertEquals("1970-01-01 00:00:00", mFormatter.format(0));
+    }
+
+    @Test
+    public void formatsNegativeMillisToTheSecondBefore() {
+        assertEquals("1969-12-31 23:59:59", mFormatter.format(-1));
+        assertEquals("1969-12-31 23:59:59", mFormatter.format(-999));
+        assertEquals("1969-12-31 23:59:59", mFormatter.format(-1000));
+        assertEquals("1969-12-31 23:59:58", mFormatter.format(-1001));
+        assertEquals(reference(-86400000L * 365 - 1), mFormatter.format(-86400000L * 365 - 1));
+    }
+
+    @Test
+    public void negativeAndPositiveSecondsDoNotShareASlotResult() {
+        // -1 秒和 0 秒的格式化结果不同，即使依次格式化也不会相互混淆
+        assertEquals("1970-01-01 00:00:00", mFormatter.format(500));
+        assertEquals("1969-12-31 23:59:59", mFormatter.format(-500));
+        assertEquals("1970-01-01 00:00:00", mFormatter.format(500));
+    }
+
+    @Test
+    public void sameSecondHitsTheCache() {
+        String first = mFormatter.format(1700000000123L);
+        String second = mFormatter.format(1700000000456L);
+        assertSame(first, second);
+        assertEquals(1, mFormatter.getMissCount());
+        assertEquals(1, mFormatter.getHitCount());
+    }
+
+    @Test
+    public void slotCollisionsReplaceTheEntry() {
+        // 相差 CACHE_SIZE 秒的时间戳落在同一个槽中
+        long a = 1700000000000L;
+        long b = a + CACHE_SIZE * 1000L;
+        assertEquals(reference(a), mFormatter.format(a));
+        assertEquals(reference(b), mFormatter.format(b));
+        assertEquals(reference(a), mFormatter.format(a));
+        assertEquals(3, mFormatter.getMissCount());
+        assertEquals(0, mFormatter.getHitCount());
+
+        assertEquals(reference(a), mFormatter.format(a + 1));
+        assertEquals(1, mFormatter.getHitCount());
+    }
+
+    @Test
+    public void slotCollisionsAcrossTheHighWord() {
+        // 高 32 位参与槽的计算，这两个秒数落在同一个槽中，结果仍然各自正确
+        long seconds = 1L << 32;
+        long other = seconds + (1L << 32) + 1;
+        assertEquals(reference(seconds * 1000), mFormatter.format(seconds * 1000));
+        assertEquals(reference(other * 1000), mFormatter.format(other * 1000));
+        assertEquals(reference(seconds * 1000), mFormatter.format(seconds * 1000));
+    }
+
+    @Test
+    public void matchesSimpleDateFormatOverARange() {
+        long millis = -5000000000L;
+        for (int i = 0; i < 2000; i++) {
+            millis += 7777777L + i;
+            assertEquals(reference(millis), mFormatter.format(millis));
+        }
+    }
+}
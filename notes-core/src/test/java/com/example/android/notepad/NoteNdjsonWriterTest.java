@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.notepad;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class NoteNdjsonWriterTest {
+
+    private static String write(String title, String... bodyParts) throws IOException {
+        StringWriter out = new StringWriter();
+        NoteNdjsonWriter json = new NoteNdjsonWriter(out);
+        json.beginNote(7, title, 1000, 2000, 0xff336699);
+        for (String part : bodyParts) {
+            json.appendNote(part);
+        }
+        json.endNote();
+        return out.toString();
+    }
+
+    @Test
+    public void writesAllFieldsOnOneLine() throws IOException {
+        assertEquals("{\"_id\":7,\"title\":\"Title\",\"created\":1000,\"modified\":2000,"
+                        + "\"color\":-13408615,\"note\":\"Body\"}\n",
+                write("Title", "Body"));
+    }
+
+    @Test
+    public void writesNullTitleAndNullBodyPart() throws IOException {
+        assertEquals("{\"_id\":7,\"title\":null,\"created\":1000,\"modified\":2000,"
+                        + "\"color\":-13408615,\"note\":\"\"}\n",
+                write(null, (String) null));
+    }
+
+    @Test
+    public void joinsAppendedParts() throws IOException {
+        String line = write("", "first ", "second", "", " third");
+        assertEquals("\"note\":\"first second third\"}\n",
+                line.substring(line.indexOf("\"note\"")));
+    }
+
+    @Test
+    public void escapesQuotesAndBackslashes() throws IOException {
+        String line = write("say \"hi\"", "C:\\notes\\");
+        assertEquals("{\"_id\":7,\"title\":\"say \\\"hi\\\"\",\"created\":1000,\"modified\":2000,"
+                        + "\"color\":-13408615,\"note\":\"C:\\\\notes\\\\\"}\n",
+                line);
+    }
+
+    @Test
+    public void escapesControlCharacters() throws IOException {
+        String line = write("t", "a\nb\rc\td\u0000e\u0001f\u001fg\u007fh");
+        assertEquals("\"note\":\"a\\nb\\rc\\td\\u0000e\\u0001f\\u001fg\u007fh\"}\n",
+                line.substring(line.indexOf("\"note\"")));
+    }
+
+    @Test
+    public void escapesLineAndParagraphSeparators() throws IOException {
+        String line = write("a\u2028b", "c\u2029d");
+        assertEquals("{\"_id\":7,\"title\":\"a\\u2028b\",\"created\":1000,\"modified\":2000,"
+                        + "\"color\":-13408615,\"note\":\"c\\u2029d\"}\n",
+                line);
+        // 只有末尾的换行是行分隔符
+        assertEquals(line.length() - 1, line.indexOf('\n'));
+        assertFalse(line.contains("\r"));
+    }
+
+    @Test
+    public void keepsNonAsciiText() throws IOException {
+        String line = write("会议", "记录 📝");
+        assertEquals("{\"_id\":7,\"title\":\"会议\",\"created\":1000,\"modified\":2000,"
+                        + "\"color\":-13408615,\"note\":\"记录 📝\"}\n",
+                line);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.example.android.notepad;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NoteRowBinderTest {
+
+    /**
+     * 记录每次视图更新。
+     */
+    private static final class RecordingBinder extends NoteRowBinder {
+        final List<String> updates = new ArrayList<String>();
+
+        @Override
+        protected void onColorChanged(int color) {
+            updates.add("color=" + color);
+        }
+
+        @Override
+        protected void onTitleChanged(String title) {
+            updates.add("title=" + title);
+        }
+
+        @Override
+        protected void onPreviewChanged(String preview) {
+            updates.add("preview=" + preview);
+        }
+
+        @Override
+        protected void onDateChanged(String date) {
+            updates.add("date=" + (date == null ? null : "set"));
+        }
+    }
+
+    private RecordingBinder mBinder;
+    private NoteDateFormatter mFormatter;
+
+    @Before
+    public void setUp() {
+        mBinder = new RecordingBinder();
+        mFormatter = new NoteDateFormatter();
+    }
+
+    @Test
+    public void firstBindUpdatesEverything() {
+        mBinder.bind(1, "title", 1000, "preview", 7, mFormatter);
+        assertEquals(4, mBinder.updates.size());
+        assertEquals(1, mBinder.getBoundId());
+    }
+
+    @Test
+    public void rebindingTheSameNoteUpdatesNothing() {
+        mBinder.bind(1, "title", 1000, "preview", 7, mFormatter);
+        mBinder.updates.clear();
+
+        // 内容相同但不是同一个字符串对象，例如重新加载的页面
+        mBinder.bind(1, new String("title"), 1000, new String("preview"), 7, mFormatter);
+        assertTrue(mBinder.updates.isEmpty());
+    }
+
+    @Test
+    public void rebindingUpdatesOnlyChangedParts() {
+        mBinder.bind(1, "title", 1000, "preview", 7, mFormatter);
+        mBinder.updates.clear();
+
+        mBinder.bind(1, "new title", 2000, "preview", 7, mFormatter);
+        assertEquals(2, mBinder.updates.size());
+        assertEquals("title=new title", mBinder.updates.get(0));
+        assertEquals("date=set", mBinder.updates.get(1));
+    }
+
+    @Test
+    public void anotherNoteUpdatesTextButNotAnUnchangedColor() {
+        mBinder.bind(1, "title", 1000, "preview", 7, mFormatter);
+        mBinder.updates.clear();
+
+        // 回收的视图显示另一条笔记时总是更新文字，即使内容恰好相同
+        mBinder.bind(2, "title", 1000, "preview", 7, mFormatter);
+        assertEquals(3, mBinder.updates.size());
+        assertEquals(2, mBinder.getBoundId());
+    }
+
+    @Test
+    public void clearEmptiesTheRowOnce() {
+        mBinder.clear();
+        assertTrue(mBinder.updates.isEmpty());
+
+        mBinder.bind(1, "title", 1000, "preview", 7, mFormatter);
+        mBinder.updates.clear();
+        mBinder.clear();
+        assertEquals(4, mBinder.updates.size());
+        assertEquals("color=0", mBinder.updates.get(0));
+        assertEquals(-1, mBinder.getBoundId());
+        mBinder.clear();
+        assertEquals(4, mBinder.updates.size());
+
+        // 清空之后重新绑定同一条笔记时更新颜色和文字
+        mBinder.updates.clear();
+        mBinder.bind(1, "title", 1000, "preview", 7, mFormatter);
+        assertEquals(4, mBinder.updates.size());
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2007 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.notepad;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NoteTextTest {
+
+    // U+1F4DD，UTF-16 中是一个代理对
+    private static final String MEMO = "📝";
+
+    private static String repeat(String s, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(s);
+        }
+        return builder.toString();
+    }
+
+    private static boolean endsWithHighSurrogate(String s) {
+        return s.length() > 0 && Character.isHighSurrogate(s.charAt(s.length() - 1));
+    }
+
+    @Test
+    public void deriveTitle_keepsShortText() {
+        assertEquals("", NoteText.deriveTitle(""));
+        assertEquals("Buy milk", NoteText.deriveTitle("Buy milk"));
+        String exact = repeat("a", NoteText.MAX_TITLE_LENGTH);
+        assertEquals(exact, NoteText.deriveTitle(exact));
+    }
+
+    @Test
+    public void deriveTitle_cutsLongTextAtLastSpace() {
+        assertEquals("The quick brown fox leaps",
+                NoteText.deriveTitle("The quick brown fox leaps across the lazy dog"));
+        // 即使前 30 个字符恰好以完整的词结束，也在其中最后一个空格处截断
+        assertEquals("The quick brown fox jumps",
+                NoteText.deriveTitle("The quick brown fox jumps over the lazy dog"));
+    }
+
+    @Test
+    public void deriveTitle_cutsLongTextWithoutSpaceAtMaxLength() {
+        String text = repeat("会议记录", 20);
+        assertEquals(text.substring(0, NoteText.MAX_TITLE_LENGTH), NoteText.deriveTitle(text));
+    }
+
+    @Test
+    public void deriveTitle_doesNotSplitSurrogatePair() {
+        // 第 30 个字符是代理对的高位
+        String text = repeat("a", NoteText.MAX_TITLE_LENGTH - 1) + MEMO + "bbb";
+        String title = NoteText.deriveTitle(text);
+        assertFalse(endsWithHighSurrogate(title));
+        assertEquals(repeat("a", NoteText.MAX_TITLE_LENGTH - 1), title);
+    }
+
+    @Test
+    public void buildPreview_nullIsEmpty() {
+        assertEquals("", NoteText.buildPreview(null));
+        assertEquals("", NoteText.buildPreview(" \n\t "));
+    }
+
+    @Test
+    public void buildPreview_collapsesWhitespace() {
+        assertEquals("first line second line",
+                NoteText.buildPreview("  \n first line\n\n\tsecond   line \n"));
+        // 全角空格和不间断空格也是空白
+        assertEquals("a b c", NoteText.buildPreview("a\u3000b\u00a0c"));
+    }
+
+    @Test
+    public void buildPreview_limitsLength() {
+        String preview = NoteText.buildPreview(repeat("中文", 100));
+        assertEquals(NoteText.PREVIEW_LENGTH, preview.length());
+
+        // 第 100 个字符是合并后的空格时，预览在它之前结束
+        preview = NoteText.buildPreview(repeat("word ", 100));
+        assertEquals(repeat("word ", 19) + "word", preview);
+    }
+
+    @Test
+    public void buildPreview_doesNotEndWithPendingSpace() {
+        // 第 100 个字符是空白时，预览不以空格结尾
+        String body = repeat("x", NoteText.PREVIEW_LENGTH) + " y";
+        assertEquals(repeat("x", NoteText.PREVIEW_LENGTH), NoteText.buildPreview(body));
+    }
+
+    @Test
+    public void buildPreview_doesNotSplitSurrogatePair() {
+        String body = repeat("a", NoteText.PREVIEW_LENGTH - 1) + MEMO + "tail";
+        String preview = NoteText.buildPreview(body);
+        assertFalse(endsWithHighSurrogate(preview));
+        assertEquals(repeat("a", NoteText.PREVIEW_LENGTH - 1), preview);
+    }
+
+    @Test
+    public void splitBody_smallBodyIsNotSplit() {
+        assertTrue(NoteText.splitBody(null, 4).isEmpty());
+        assertTrue(NoteText.splitBody("", 4).isEmpty());
+        assertTrue(NoteText.splitBody("abcd", 4).isEmpty());
+    }
+
+    @Test
+    public void splitBody_splitsIntoChunksOfAtMostChunkSize() {
+        List<String> chunks = NoteText.splitBody("abcdefghij", 4);
+        assertEquals(3, chunks.size());
+        assertEquals("abcd", chunks.get(0));
+        assertEquals("efgh", chunks.get(1));
+        assertEquals("ij", chunks.get(2));
+    }
+
+    @Test
+    public void splitBody_keepsSurrogatePairsTogether() {
+        // 每个分块边界都落在代理对中间
+        String body = "abc" + MEMO + "de" + MEMO + MEMO + "f";
+        List<String> chunks = NoteText.splitBody(body, 4);
+
+        StringBuilder joined = new StringBuilder();
+        for (String chunk : chunks) {
+            assertTrue(chunk.length() <= 4);
+            assertFalse(chunk.isEmpty());
+            assertFalse(endsWithHighSurrogate(chunk));
+            assertFalse(Character.isLowSurrogate(chunk.charAt(0)));
+            joined.append(chunk);
+        }
+        assertEquals(body, joined.toString());
+        assertEquals("abc", chunks.get(0));
+    }
+
+    @Test
+    public void buildMatchExpression_noTerms() {
+        assertNull(NoteText.buildMatchExpression(null));
+        assertNull(NoteText.buildMatchExpression(""));
+        assertNull(NoteText.buildMatchExpression("   \t"));
+        assertNull(NoteText.buildMatchExpression("\"\" \""));
+    }
+
+    @Test
+    public void buildMatchExpression_quotesEachTermAsPrefix() {
+        assertEquals("\"meeting\"*", NoteText.buildMatchExpression("meeting"));
+        assertEquals("\"meeting\"* \"notes\"*",
+                NoteText.buildMatchExpression("  meeting \n notes "));
+        assertEquals("\"会议\"*", NoteText.buildMatchExpression("会议"));
+    }
+
+    @Test
+    public void buildMatchExpression_stripsQuotes() {
+        assertEquals("\"say\"* \"hello\"*", NoteText.buildMatchExpression("\"say\"hello\""));
+        // 去掉引号之后剩下的 FTS 运算符只是普通的词
+        assertEquals("\"a\"* \"OR\"* \"b\"*", NoteText.buildMatchExpression("a \"OR\" b"));
+    }
+}